@@ -1,13 +1,29 @@
 package com.sucy.minigame;
 
 import com.sucy.minigame.arena.Arena;
+import com.sucy.minigame.arena.ArenaClock;
+import com.sucy.minigame.arena.ArenaPlayer;
+import com.sucy.minigame.arena.ArenaQueue;
+import com.sucy.minigame.arena.ChunkWarmer;
+import com.sucy.minigame.arena.InventoryJournal;
+import com.sucy.minigame.arena.SignIndex;
+import com.sucy.minigame.arena.SignUpdater;
+import com.sucy.minigame.arena.SpawnScheduler;
 import com.sucy.minigame.plugin.PluginData;
-import com.sucy.minigame.util.DataParser;
+import com.sucy.minigame.plugin.StorageType;
 import org.bukkit.Location;
+import org.bukkit.entity.Player;
 import org.bukkit.event.HandlerList;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
 import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * MinigameAPI
@@ -18,13 +34,50 @@ import java.util.HashMap;
 public class MinigameAPI extends JavaPlugin {
 
     private final HashMap<String, PluginData> plugins = new HashMap<String, PluginData>();
+    private final HashMap<UUID, ArenaPlayer> players = new HashMap<UUID, ArenaPlayer>();
+    private final HashMap<UUID, ArenaQueue> queued = new HashMap<UUID, ArenaQueue>();
+    private final SignIndex signIndex = new SignIndex();
+    private final ArenaClock clock = new ArenaClock();
+    private final SignUpdater signUpdater = new SignUpdater();
+    private final SpawnScheduler spawnScheduler = new SpawnScheduler();
+    private final ChunkWarmer chunkWarmer = new ChunkWarmer();
+    private InventoryJournal journal;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MinigameAPI I/O");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final ExecutorService loadExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MinigameAPI Loader #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     /**
-     * Sets up the listener
+     * Sets up the listener and starts the arena clock and sign updater
      */
     @Override
     public void onEnable() {
+        journal = new InventoryJournal(this, new File(getDataFolder(), "journal"), ioExecutor);
         new MinigameListener(this);
+        clock.runTaskTimer(this, 1, 1);
+        signUpdater.runTaskTimer(this, 1, 1);
+        spawnScheduler.runTaskTimer(this, 1, 1);
+        chunkWarmer.runTaskTimer(this, 1, 1);
+
+        // Players that stayed online while the API was reloaded
+        for (Player player : getServer().getOnlinePlayers()) {
+            journal.recover(player);
+        }
     }
 
     /**
@@ -35,11 +88,29 @@ public class MinigameAPI extends JavaPlugin {
         HandlerList.unregisterAll(this);
         for (PluginData data : plugins.values()) {
             for (Arena arena : data.getArenas()) {
+                arena.getQueue().clear();
                 arena.endGame();
                 arena.removeAllPlayers();
             }
             data.save();
         }
+        clock.cancel();
+        signUpdater.flush();
+        signUpdater.cancel();
+        spawnScheduler.cancel();
+        chunkWarmer.cancel();
+        loadExecutor.shutdownNow();
+
+        // Wait for queued saves to be written
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                getLogger().severe("Timed out waiting for arena data to save");
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -50,17 +121,164 @@ public class MinigameAPI extends JavaPlugin {
      * @return        arena attached to the sign or null if not found
      */
     public Arena getArena(Location signLoc) {
+        return signIndex.get(signLoc);
+    }
 
-        // Search for arenas
-        String serializedLoc = DataParser.serializeLocation(signLoc);
-        for (PluginData data : plugins.values()) {
-            Arena arena = data.getArena(signLoc);
-            if (arena != null)
-                return arena;
+    /**
+     * <p>Retrieves the arena a player is currently in</p>
+     * <p>The arena returned by this method can be from any plugin</p>
+     *
+     * @param player player to search for
+     * @return       arena the player is in or null if not in one
+     */
+    public Arena getArena(Player player) {
+        ArenaPlayer arenaPlayer = players.get(player.getUniqueId());
+        return arenaPlayer == null ? null : arenaPlayer.getArena();
+    }
+
+    /**
+     * <p>Retrieves the arena data of a player</p>
+     * <p>The data returned by this method can be from any plugin</p>
+     *
+     * @param player player to search for
+     * @return       arena data for the player or null if not in an arena
+     */
+    public ArenaPlayer getArenaPlayer(Player player) {
+        return players.get(player.getUniqueId());
+    }
+
+    /**
+     * <p>Registers a player as being in an arena</p>
+     * <p>This is handled by the plugin data of the arena, so you
+     * should not call this yourself.</p>
+     *
+     * @param player player that joined an arena
+     */
+    public void registerPlayer(ArenaPlayer player) {
+        players.put(player.getPlayerId(), player);
+    }
+
+    /**
+     * <p>Unregisters a player from their arena</p>
+     * <p>This is handled by the plugin data of the arena, so you
+     * should not call this yourself.</p>
+     *
+     * @param player player that left an arena
+     */
+    public void unregisterPlayer(ArenaPlayer player) {
+        if (players.get(player.getPlayerId()) == player) {
+            players.remove(player.getPlayerId());
         }
+    }
+
+    /**
+     * Retrieves the queue a player is waiting in
+     *
+     * @param player player to check
+     * @return       queue the player is waiting in or null if not waiting
+     */
+    public ArenaQueue getQueue(Player player) {
+        return queued.get(player.getUniqueId());
+    }
+
+    /**
+     * Removes a player from the queue they are waiting in, if any
+     *
+     * @param player player to remove
+     * @return       true if the player was waiting, false otherwise
+     */
+    public boolean leaveQueue(Player player) {
+        ArenaQueue queue = queued.get(player.getUniqueId());
+        return queue != null && queue.remove(player.getUniqueId());
+    }
 
-        // Arena not found
-        return null;
+    /**
+     * <p>Registers a player as waiting in a queue</p>
+     * <p>This is handled by the queue, so you should not call this yourself.</p>
+     *
+     * @param playerId unique ID of the player
+     * @param queue    queue the player is waiting in
+     */
+    public void registerQueued(UUID playerId, ArenaQueue queue) {
+        queued.put(playerId, queue);
+    }
+
+    /**
+     * <p>Unregisters a player from the queue they were waiting in</p>
+     * <p>This is handled by the queue, so you should not call this yourself.</p>
+     *
+     * @param playerId unique ID of the player
+     * @param queue    queue the player was waiting in
+     */
+    public void unregisterQueued(UUID playerId, ArenaQueue queue) {
+        if (queued.get(playerId) == queue) {
+            queued.remove(playerId);
+        }
+    }
+
+    /**
+     * @return clock driving the timers of all arena states
+     */
+    public ArenaClock getArenaClock() {
+        return clock;
+    }
+
+    /**
+     * <p>Retrieves the executor used for writing data files</p>
+     * <p>It runs tasks one at a time in the order they were submitted,
+     * so writes to the same file never overtake each other.</p>
+     *
+     * @return executor for file writes
+     */
+    public ExecutorService getIOExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * <p>Retrieves the executor used for parsing arena data</p>
+     * <p>It has a thread per core, started only once data is loaded,
+     * and is shared by all plugins so loading doesn't need a new
+     * pool each time.</p>
+     *
+     * @return executor for parsing arena data
+     */
+    public ExecutorService getLoadExecutor() {
+        return loadExecutor;
+    }
+
+    /**
+     * @return queue coalescing join sign updates
+     */
+    public SignUpdater getSignUpdater() {
+        return signUpdater;
+    }
+
+    /**
+     * @return loader holding the chunks around spawns of arenas about to start
+     */
+    public ChunkWarmer getChunkWarmer() {
+        return chunkWarmer;
+    }
+
+    /**
+     * @return pipeline spreading spawn teleports across ticks
+     */
+    public SpawnScheduler getSpawnScheduler() {
+        return spawnScheduler;
+    }
+
+    /**
+     * @return journal of the player data replaced while in arenas
+     */
+    public InventoryJournal getInventoryJournal() {
+        return journal;
+    }
+
+    /**
+     * @return index of the join signs of all loaded arenas
+     */
+    public SignIndex getSignIndex() {
+        return signIndex;
     }
 
     /**
@@ -69,7 +287,30 @@ public class MinigameAPI extends JavaPlugin {
      * @param plugin  plugin to load
      */
     public PluginData loadPluginData(JavaPlugin plugin) {
-        PluginData data = new PluginData(this, plugin);
+        return loadPluginData(plugin, StorageType.SINGLE_FILE);
+    }
+
+    /**
+     * Loads the data for a plugin stored in the given layout and registers it with the API
+     *
+     * @param plugin  plugin to load
+     * @param storage layout the arenas are stored in
+     */
+    public PluginData loadPluginData(JavaPlugin plugin, StorageType storage) {
+        return loadPluginData(plugin, storage, false);
+    }
+
+    /**
+     * <p>Loads the data for a plugin stored in the given layout and registers it with the API</p>
+     * <p>When loading lazily, arenas only load their states and teams
+     * the first time they are used.</p>
+     *
+     * @param plugin  plugin to load
+     * @param storage layout the arenas are stored in
+     * @param lazy    whether or not to load arenas on first use
+     */
+    public PluginData loadPluginData(JavaPlugin plugin, StorageType storage, boolean lazy) {
+        PluginData data = new PluginData(this, plugin, storage, lazy);
         data.loadData();
         plugins.put(plugin.getName(), data);
         return data;
@@ -91,7 +332,10 @@ public class MinigameAPI extends JavaPlugin {
      * @param plugin plugin to unload
      */
     public void clearPluginData(JavaPlugin plugin) {
-        plugins.remove(plugin.getName());
+        PluginData data = plugins.remove(plugin.getName());
+        if (data != null) {
+            data.unload();
+        }
     }
 
     /**
@@ -103,6 +347,7 @@ public class MinigameAPI extends JavaPlugin {
         if (plugins.containsKey(plugin.getName())) {
             PluginData data = plugins.get(plugin.getName());
             data.deleteData();
+            data.unload();
             plugins.remove(plugin.getName());
         }
     }
@@ -1,14 +1,25 @@
 package com.sucy.minigame;
 
 import com.sucy.minigame.arena.Arena;
+import com.sucy.minigame.arena.ArenaPlayer;
+import com.sucy.minigame.arena.SignIndex;
 import com.sucy.minigame.event.PlayerJoinFailedEvent;
+import com.sucy.minigame.util.StoredLocation;
+import org.bukkit.Chunk;
 import org.bukkit.block.Block;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 
 /**
@@ -45,6 +56,36 @@ public class MinigameListener implements Listener {
         api.clearPluginData((JavaPlugin)event.getPlugin());
     }
 
+    /**
+     * Drops the live handle of players in an arena and removes players
+     * from the queue they were waiting in when they log off
+     *
+     * @param event event details
+     */
+    @EventHandler
+    public void onQuit(PlayerQuitEvent event) {
+        api.leaveQueue(event.getPlayer());
+        ArenaPlayer arenaPlayer = api.getArenaPlayer(event.getPlayer());
+        if (arenaPlayer != null) {
+            arenaPlayer.setPlayer(null);
+        }
+    }
+
+    /**
+     * Reattaches the live handle of players still in an arena when they log back in
+     * and restores the data of players that left an arena without it being restored
+     *
+     * @param event event details
+     */
+    @EventHandler
+    public void onJoin(PlayerJoinEvent event) {
+        ArenaPlayer arenaPlayer = api.getArenaPlayer(event.getPlayer());
+        if (arenaPlayer != null) {
+            arenaPlayer.setPlayer(event.getPlayer());
+        }
+        else api.getInventoryJournal().recover(event.getPlayer());
+    }
+
     /**
      * Handles joining arenas via sign
      *
@@ -70,10 +111,10 @@ public class MinigameListener implements Listener {
             // Arena must be functioning and allowing plyers in
             if (arena.canPlayersJoin() && arena.canStartGame()) {
 
-                api.getLogger().info("In arena: " + (arena.getPlayer(event.getPlayer().getName()) != null));
+                api.getLogger().info("In arena: " + (arena.getPlayer(event.getPlayer()) != null));
 
                 // Player is already in the arena
-                if (arena.getPlayer(event.getPlayer().getName()) != null)
+                if (arena.getPlayer(event.getPlayer()) != null)
                     return;
 
                 // Add the player to the arena
@@ -95,9 +136,59 @@ public class MinigameListener implements Listener {
      */
     @EventHandler
     public void onBreak(BlockBreakEvent event) {
-        Arena arena = api.getArena(event.getBlock().getLocation());
+        Block block = event.getBlock();
+        SignIndex index = api.getSignIndex();
+
+        // Most broken blocks are nowhere near a join sign
+        if (!index.hasSigns(block.getWorld(), block.getX() >> 4, block.getZ() >> 4))
+            return;
+
+        Arena arena = index.get(block.getWorld(), block.getX(), block.getY(), block.getZ());
         if (arena != null) {
             arena.setSignLoc(null);
         }
     }
+
+    /**
+     * Keeps chunks around the spawns of arenas about to start loaded
+     *
+     * @param event event details
+     */
+    @EventHandler(ignoreCancelled = true)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        Chunk chunk = event.getChunk();
+        if (api.getChunkWarmer().isHeld(chunk.getWorld(), chunk.getX(), chunk.getZ())) {
+            event.setCancelled(true);
+        }
+    }
+
+    /**
+     * Binds stored locations in a world once it loads
+     *
+     * @param event event details
+     */
+    @EventHandler
+    public void onWorldLoad(WorldLoadEvent event) {
+        StoredLocation.invalidate(event.getWorld().getName());
+    }
+
+    /**
+     * Releases stored locations bound to a world when it unloads
+     *
+     * @param event event details
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        StoredLocation.invalidate(event.getWorld().getName());
+    }
+
+    /**
+     * Applies join sign updates that were waiting on a chunk to load
+     *
+     * @param event event details
+     */
+    @EventHandler
+    public void onChunkLoad(ChunkLoadEvent event) {
+        api.getSignUpdater().chunkLoaded(event.getChunk());
+    }
 }
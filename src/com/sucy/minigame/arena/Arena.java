@@ -1,13 +1,12 @@
 package com.sucy.minigame.arena;
 
-import com.sucy.minigame.util.DataParser;
 import com.sucy.minigame.event.ArenaEndEvent;
 import com.sucy.minigame.event.ArenaStartEvent;
 import com.sucy.minigame.event.PlayerJoinArenaEvent;
 import com.sucy.minigame.event.PlayerLeaveArenaEvent;
 import com.sucy.minigame.plugin.ConfigValues;
 import com.sucy.minigame.plugin.PluginData;
-import org.bukkit.ChatColor;
+import com.sucy.minigame.util.StoredLocation;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.BlockState;
@@ -15,9 +14,13 @@ import org.bukkit.block.Sign;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 
-import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * <p>An arena instance for a mini-game</p>
@@ -28,19 +31,31 @@ import java.util.HashMap;
 public final class Arena {
 
     private final HashMap<String, ArenaState> arenaStates = new HashMap<String, ArenaState>();
-    private final HashMap<String, ArenaPlayer> players = new HashMap<String, ArenaPlayer>();
+    private final HashMap<UUID, ArenaPlayer> players = new HashMap<UUID, ArenaPlayer>();
     private final HashMap<String, ArenaTeam> teams = new HashMap<String, ArenaTeam>();
 
+    private final ArenaQueue queue = new ArenaQueue(this);
     private final PluginData plugin;
-    private final ArenaLobby lobby;
     private final String name;
 
+    // Lines last written to the join sign and the buffer to render them in
+    private final String[] signText = new String[SignTemplate.MAX_LINES];
+    private final StringBuilder signBuffer = new StringBuilder();
+
+    // Whether or not the sign is waiting in the SignUpdater queue or on its chunk
+    boolean signQueued;
+    boolean signDeferred;
+
+    private ArenaLobby lobby;
     private ArenaState currentState;
     private ArenaState startState;
     private ArenaTeam defaultTeam;
-    private Location signLoc;
-    private Location lobbyLoc;
+    private StoredLocation signLoc;
+    private StoredLocation lobbyLoc;
     private int maxPlayers;
+    private boolean loaded;
+    private boolean dirty;
+    private boolean admitting;
 
     /**
      * <p>Creates an arena with no time limit for the lobby</p>
@@ -78,10 +93,14 @@ public final class Arena {
         this.name = name;
         this.maxPlayers = maxPlayers;
 
+        // New arenas have nothing to load, so states can use them right away
+        loaded = true;
         lobby = new ArenaLobby(this, lobbyTimeLimit, minPlayers);
         arenaStates.put(lobby.getName().toLowerCase(), lobby);
         this.currentState = lobby;
-        save();
+        lobby.start();
+        markDirty();
+        updateMatchmaker();
     }
 
     /**
@@ -93,55 +112,114 @@ public final class Arena {
      * @param name   arena name
      */
     public Arena(PluginData plugin, String name) {
+        this(plugin, ArenaDescriptor.parse(name, plugin.getArenaConfig(name)));
+    }
+
+    /**
+     * <p>Descriptor constructor.</p>
+     * <p>Builds the arena from a descriptor parsed from the config. This
+     * constructor is strictly for API use while loading plugin data.
+     * You should never call this constructor yourself.</p>
+     *
+     * @param plugin     plugin to load from
+     * @param descriptor parsed arena data
+     */
+    public Arena(PluginData plugin, ArenaDescriptor descriptor) {
         this.plugin = plugin;
-        this.name = name;
+        this.name = descriptor.getName();
+        this.maxPlayers = descriptor.getMaxPlayers();
+        load(descriptor);
+    }
 
-        // Get basic values
-        ConfigurationSection config = getConfig();
+    /**
+     * <p>Index constructor.</p>
+     * <p>Only reads the name, player limit and join sign of the arena so it
+     * can be found by name or sign. The states and teams are loaded from the
+     * config the first time they are needed. This constructor is strictly for
+     * API use while loading plugin data. You should never call this
+     * constructor yourself.</p>
+     *
+     * @param plugin plugin to load from
+     * @param name   arena name
+     * @param config configuration section of the arena
+     */
+    public Arena(PluginData plugin, String name, ConfigurationSection config) {
+        this.plugin = plugin;
+        this.name = name;
         this.maxPlayers = config.getInt(ConfigValues.MAX_PLAYERS);
 
+        // Sign location
+        signLoc = StoredLocation.fromConfig(config, ConfigValues.SIGN_LOC);
+        plugin.getApi().getSignIndex().register(this, signLoc);
+        updateMatchmaker();
+    }
+
+    /**
+     * Builds the states and teams of the arena from its descriptor
+     *
+     * @param descriptor parsed arena data
+     */
+    private void load(ArenaDescriptor descriptor) {
+        loaded = true;
+
         // Load teams
-        if (config.contains(ConfigValues.TEAMS)) {
-            for (String team : config.getConfigurationSection(ConfigValues.TEAMS).getKeys(false)) {
-                teams.put(team.toLowerCase(), new ArenaTeam(this, team));
-            }
+        for (Map.Entry<String, List<StoredLocation>> team : descriptor.getTeams().entrySet()) {
+            ArenaTeam arenaTeam = new ArenaTeam(this, team.getKey(), team.getValue());
+            teams.put(team.getKey().toLowerCase(), arenaTeam);
         }
 
         // Load states
-        for (String state : config.getConfigurationSection(ConfigValues.STATES).getKeys(false)) {
-            ConfigurationSection stateConfig = config.getConfigurationSection(ConfigValues.STATES + "." + state);
+        for (Map.Entry<String, String> state : descriptor.getStates().entrySet()) {
             try {
-                String className = stateConfig.getString(ConfigValues.CLASS);
-                Constructor constructor = Class.forName(className).getDeclaredConstructor(Arena.class, String.class);
-                ArenaState arenaState = (ArenaState)constructor.newInstance(this, state);
-                arenaStates.put(state.toLowerCase(), arenaState);
+                ArenaState arenaState = plugin.createState(this, state.getValue(), state.getKey());
+                arenaStates.put(state.getKey().toLowerCase(), arenaState);
             }
             catch (Exception ex) {
                 ex.printStackTrace();
-                plugin.getPlugin().getLogger().severe("Failed to load arena state: " + state);
+                plugin.getPlugin().getLogger().severe("Failed to load arena state: " + state.getKey());
             }
         }
         lobby = (ArenaLobby)getState(ArenaLobby.STATE_NAME);
         currentState = lobby;
+        lobby.start();
 
-        // Sign location
-        if (config.contains(ConfigValues.SIGN_LOC)) {
-            signLoc = DataParser.parseLocation(config.getString(ConfigValues.SIGN_LOC));
+        // Sign location, already registered by the index constructor
+        if (signLoc == null) {
+            signLoc = descriptor.getSignLoc();
+            plugin.getApi().getSignIndex().register(this, signLoc);
         }
 
         // Lobby location
-        if (config.contains(ConfigValues.LOBBY_SPAWN)) {
-            lobbyLoc = DataParser.parseLocation(config.getString(ConfigValues.LOBBY_SPAWN));
-        }
+        lobbyLoc = descriptor.getLobbyLoc();
 
         // Starting game state
-        if (config.contains(ConfigValues.START_STATE)) {
-            startState = getState(config.getString(ConfigValues.START_STATE));
+        if (descriptor.getStartState() != null) {
+            startState = getState(descriptor.getStartState());
         }
 
         // Default team
-        if (config.contains(ConfigValues.DEFAULT_TEAM)) {
-            defaultTeam = getTeam(config.getString(ConfigValues.DEFAULT_TEAM));
+        if (descriptor.getDefaultTeam() != null) {
+            defaultTeam = getTeam(descriptor.getDefaultTeam());
+        }
+
+        updateMatchmaker();
+    }
+
+    /**
+     * @return true if the states and teams of the arena are loaded, false otherwise
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * <p>Loads the states and teams of the arena if they aren't loaded yet</p>
+     * <p>Arenas of plugin data loaded lazily only load these on first use.
+     * All methods of the arena that need them call this for you.</p>
+     */
+    public void ensureLoaded() {
+        if (!loaded) {
+            load(ArenaDescriptor.parse(name, getConfig()));
         }
     }
 
@@ -155,6 +233,7 @@ public final class Arena {
      * @return true if the arena is ready to start a game, false otherwise
      */
     public boolean canStartGame() {
+        ensureLoaded();
         return lobbyLoc != null
                 && startState != null
                 && defaultTeam != null;
@@ -167,6 +246,7 @@ public final class Arena {
      * @return true if enough players are present in the arena to play a match, false otherwise
      */
     public boolean hasEnoughPlayers() {
+        ensureLoaded();
         return lobby.getMinPlayers() <= players.size();
     }
 
@@ -188,20 +268,33 @@ public final class Arena {
      * @return arena state for the lobby
      */
     public ArenaLobby getLobbyState() {
+        ensureLoaded();
         return lobby;
     }
 
     /**
-     * @return lobby spawn location
+     * @return lobby spawn location or null if not set or its world isn't loaded
      */
     public Location getLobbyLoc() {
-        return lobbyLoc;
+        ensureLoaded();
+        return lobbyLoc == null ? null : lobbyLoc.toLocation();
     }
 
     /**
-     * @return join sign location
+     * @return join sign location or null if not set or its world isn't loaded
      */
     public Location getSignLoc() {
+        return signLoc == null ? null : signLoc.toLocation();
+    }
+
+    /**
+     * <p>Retrieves the join sign location as it is stored</p>
+     * <p>Unlike getSignLoc(), this is available even if the
+     * world of the sign isn't loaded.</p>
+     *
+     * @return stored join sign location or null if not set
+     */
+    public StoredLocation getStoredSignLoc() {
         return signLoc;
     }
 
@@ -209,6 +302,7 @@ public final class Arena {
      * @return current state of the arena
      */
     public ArenaState getCurrentState() {
+        ensureLoaded();
         return currentState;
     }
 
@@ -216,6 +310,7 @@ public final class Arena {
      * @return true if players can join, false otherwise
      */
     public boolean canPlayersJoin() {
+        ensureLoaded();
         return currentState.canPlayersJoin();
     }
 
@@ -233,6 +328,7 @@ public final class Arena {
      * @return     arena state or null if not found
      */
     public ArenaState getState(String name) {
+        ensureLoaded();
         return arenaStates.get(name.toLowerCase());
     }
 
@@ -243,17 +339,46 @@ public final class Arena {
      * @return     arena team
      */
     public ArenaTeam getTeam(String name) {
+        ensureLoaded();
         return teams.get(name.toLowerCase());
     }
 
     /**
      * Retrieves a player in the arena
      *
+     * @param player player to look up
+     * @return       player in the arena or null if not in the arena
+     */
+    public ArenaPlayer getPlayer(Player player) {
+        return players.get(player.getUniqueId());
+    }
+
+    /**
+     * Retrieves a player in the arena
+     *
+     * @param playerId unique ID of the player
+     * @return         player in the arena or null if not in the arena
+     */
+    public ArenaPlayer getPlayer(UUID playerId) {
+        return players.get(playerId);
+    }
+
+    /**
+     * <p>Retrieves a player in the arena by name</p>
+     * <p>This is only kept for compatibility and has to check every
+     * player in the arena. Use getPlayer(Player) or getPlayer(UUID)
+     * instead when possible.</p>
+     *
      * @param name player name
-     * @return     player in the arena
+     * @return     player in the arena or null if not in the arena
      */
     public ArenaPlayer getPlayer(String name) {
-        return players.get(name.toLowerCase());
+        for (ArenaPlayer player : players.values()) {
+            if (player.getPlayerName().equalsIgnoreCase(name)) {
+                return player;
+            }
+        }
+        return null;
     }
 
     /**
@@ -269,7 +394,10 @@ public final class Arena {
      * @param loc new spawn location
      */
     public void setLobbyLoc(Location loc) {
-        lobbyLoc = loc;
+        ensureLoaded();
+        lobbyLoc = StoredLocation.of(loc);
+        markDirty();
+        updateMatchmaker();
     }
 
     /**
@@ -279,12 +407,22 @@ public final class Arena {
      * @return    true if location pointed to a sign and could be set, false otherwise
      */
     public boolean setSignLoc(Location loc) {
+        ensureLoaded();
+        SignIndex index = plugin.getApi().getSignIndex();
         if (loc == null) {
+            plugin.getApi().getSignUpdater().cancel(this);
+            index.unregister(this, signLoc);
             signLoc = null;
+            markDirty();
             return true;
         }
         else if (loc.getBlock().getType() == Material.SIGN_POST || loc.getBlock().getType() == Material.WALL_SIGN) {
-            signLoc = loc;
+            plugin.getApi().getSignUpdater().cancel(this);
+            index.unregister(this, signLoc);
+            signLoc = StoredLocation.of(loc);
+            index.register(this, signLoc);
+            Arrays.fill(signText, null);
+            markDirty();
             updateSign();
             return true;
         }
@@ -300,6 +438,9 @@ public final class Arena {
      * <p>- A join event is fired and can cancel this method</p>
      * <p>- There must not be too many players</p>
      * <br/>
+     * <p>Players that can't join only because the arena is full are put
+     * in its queue and added automatically once a slot opens.</p>
+     * <br/>
      * <p>This order allows you to make vip players to kick someone else out to join
      * a full lobby. this can be done by listening on the event and removing a player
      * when the joining player has the permission and the lobby is full.</p>
@@ -315,9 +456,11 @@ public final class Arena {
      * @return       the arena data for the player or null if unable to add the player
      */
     public ArenaPlayer addPlayer(Player player) {
+        ensureLoaded();
 
-        // There needs to be a default team to put the player on
-        if (defaultTeam != null && currentState.canPlayersJoin()) {
+        // There needs to be a default team to put the player on and a lobby to put them in
+        Location lobbySpawn = getLobbyLoc();
+        if (defaultTeam != null && lobbySpawn != null && currentState.canPlayersJoin()) {
 
             // Run the event to make sure they can join
             PlayerJoinArenaEvent event = new PlayerJoinArenaEvent(this, player);
@@ -328,17 +471,33 @@ public final class Arena {
                 return null;
             }
 
-            // Too many players
+            // Too many players, so wait for a slot unless already playing
             if (players.size() >= maxPlayers) {
+                if (plugin.getApi().getArenaPlayer(player) == null) {
+                    queue.add(player);
+                }
                 return null;
             }
 
             // Add the players
+            plugin.getApi().leaveQueue(player);
             ArenaPlayer arenaPlayer = new ArenaPlayer(this, player);
-            players.put(player.getName().toLowerCase(), arenaPlayer);
-            player.teleport(lobbyLoc);
+            players.put(player.getUniqueId(), arenaPlayer);
+            plugin.registerPlayer(arenaPlayer);
+            player.teleport(lobbySpawn);
             defaultTeam.addMember(arenaPlayer);
-            updateSign();
+
+            // Wake the lobby up for the first player and get the
+            // spawns ready once the game can start
+            if (currentState == lobby) {
+                lobby.wake();
+                if (players.size() >= lobby.getMinPlayers()) {
+                    warmChunks();
+                }
+            }
+
+            queueSignUpdate();
+            updateMatchmaker();
             return arenaPlayer;
         }
 
@@ -359,37 +518,60 @@ public final class Arena {
      * @param player player to remove
      */
     public void removePlayer(ArenaPlayer player) {
-        if (players.containsKey(player.getPlayer().getName().toLowerCase())) {
-            players.remove(player.getPlayer().getName().toLowerCase());
+        if (players.remove(player.getPlayerId()) != null) {
+            plugin.unregisterPlayer(player);
             currentState.playerLeft(player);
-            updateSign();
+
+            // Empty lobbies don't need to tick or keep their spawns loaded
+            if (players.isEmpty() && currentState == lobby) {
+                lobby.hibernate();
+                plugin.getApi().getChunkWarmer().release(this);
+            }
+
+            queueSignUpdate();
+            updateMatchmaker();
 
             // Launch an event
-            PlayerLeaveArenaEvent event = new PlayerLeaveArenaEvent(this, player.getPlayer());
+            PlayerLeaveArenaEvent event = new PlayerLeaveArenaEvent(this, player.getPlayer(),
+                    player.getPlayerId(), player.getPlayerName());
             plugin.getPlugin().getServer().getPluginManager().callEvent(event);
+
+            admitQueued();
         }
     }
 
     /**
      * <p>Removes all players from the arena</p>
      * <p>This method does launch the leave event for each and every
-     * player that was in the arena.</p>
+     * player that was in the arena. Queued players are not let in
+     * while the arena is emptied.</p>
      */
     public void removeAllPlayers() {
-        for (ArenaPlayer player : players.values()) {
-            player.leaveArena();
+        boolean wasAdmitting = admitting;
+        admitting = true;
+        try {
+            for (ArenaPlayer player : new ArrayList<ArenaPlayer>(players.values())) {
+                player.leaveArena();
+            }
+        }
+        finally {
+            admitting = wasAdmitting;
         }
     }
 
     /**
      * <p>Starts the arena game by transitioning to the starting
      * state and moving all players to their team spawn location.</p>
+     * <p>The players are moved over the following ticks by the spawn
+     * scheduler. The starting state only starts once every player is
+     * moved, unless the game ended in the meantime.</p>
      * <p>This method does nothing if the arena is not ready to start a game
      * due to the arena not being fully set up, not being in the lobby state,
      * or not having enough players.</p>
      * <p>This method can be cancelled by the start event it launches</p>
      */
     public void startGame() {
+        ensureLoaded();
 
         // Do not start if not able to
         if (!canStartGame() || currentState != lobby || lobby.getMinPlayers() > players.size()) {
@@ -408,12 +590,24 @@ public final class Arena {
         // Transition to the starting state
         currentState.pause();
         currentState = startState;
-        startState.start();
-
-        // Move players
+        queueSignUpdate();
+        updateMatchmaker();
+
+        // Move players, starting the state once they are all there
+        final ArenaState starting = startState;
+        SpawnScheduler spawner = plugin.getApi().getSpawnScheduler();
+        SpawnScheduler.Batch batch = spawner.createBatch(this, new Runnable() {
+            @Override
+            public void run() {
+                if (currentState == starting) {
+                    starting.start();
+                }
+            }
+        });
         for (ArenaTeam team : teams.values()) {
-            team.spawnPlayers();
+            team.queueSpawns(batch);
         }
+        spawner.submit(batch);
     }
 
     /**
@@ -424,17 +618,84 @@ public final class Arena {
 
         // Cannot be in the lobby state already
         if (currentState != lobby) {
-            currentState.end();
+
+            // States still waiting on players to spawn never started
+            if (!plugin.getApi().getSpawnScheduler().cancel(this)) {
+                currentState.end();
+            }
             removeAllPlayers();
             currentState = lobby;
             currentState.start();
+            plugin.getApi().getChunkWarmer().release(this);
+            updateMatchmaker();
 
             // Call an event
             ArenaEndEvent event = new ArenaEndEvent(this);
             plugin.getPlugin().getServer().getPluginManager().callEvent(event);
+
+            admitQueued();
+        }
+    }
+
+    /**
+     * @return queue of players waiting for a slot in the arena
+     */
+    public ArenaQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * <p>Adds queued players while there are open slots and the
+     * current state lets players join</p>
+     * <p>Players that still can't join, for example because the join
+     * event was cancelled, lose their place and the next one is tried.</p>
+     */
+    void admitQueued() {
+        if (admitting || !loaded || currentState == null) {
+            return;
+        }
+
+        admitting = true;
+        try {
+            while (players.size() < maxPlayers && currentState.canPlayersJoin()) {
+                Player next = queue.poll();
+                if (next == null) {
+                    break;
+                }
+                if (next.isOnline() && plugin.getApi().getArenaPlayer(next) == null) {
+                    addPlayer(next);
+                }
+            }
+        }
+        finally {
+            admitting = false;
         }
     }
 
+    /**
+     * <p>Checks whether or not the team spawns are safe to stand on</p>
+     * <p>This is done by the chunk warmer once their chunks are loaded,
+     * so you should not need to call this yourself.</p>
+     */
+    void checkSpawns() {
+        for (ArenaTeam team : teams.values()) {
+            team.checkSpawns();
+        }
+    }
+
+    /**
+     * Loads and holds the chunks around the lobby and team spawns
+     * until the game ends or the lobby empties
+     */
+    private void warmChunks() {
+        ArrayList<StoredLocation> locations = new ArrayList<StoredLocation>(teams.size() + 1);
+        locations.add(lobbyLoc);
+        for (ArenaTeam team : teams.values()) {
+            locations.addAll(team.getStoredSpawns());
+        }
+        plugin.getApi().getChunkWarmer().warm(this, locations);
+    }
+
     /**
      * Sets the active state of the arena without ending the current state.
      * If you want the current state to perform ending functions, simply call
@@ -444,12 +705,14 @@ public final class Arena {
      * @return      true if successfully transitioned, false otherwise
      */
     public boolean setState(ArenaState state) {
+        ensureLoaded();
 
         // Must be a state of this arena
         if (state != null && state.getArena() == this) {
             currentState.pause();
             currentState = state;
             state.start();
+            updateMatchmaker();
             return true;
         }
 
@@ -467,6 +730,7 @@ public final class Arena {
      * @return      true if successfully added
      */
     public boolean addState(ArenaState state, boolean start) {
+        ensureLoaded();
 
         // State doesn't exist or is already added
         if (state == null || arenaStates.containsKey(state.getName())) {
@@ -481,6 +745,8 @@ public final class Arena {
             this.startState = state;
         }
 
+        markDirty();
+        updateMatchmaker();
         return true;
     }
 
@@ -493,6 +759,7 @@ public final class Arena {
      * @return            team that was added or null if unable to add the team
      */
     public ArenaTeam addTeam(String team, Location spawn, boolean defaultTeam) {
+        ensureLoaded();
 
         // Cannot already have a team with that name
         if (!teams.containsKey(team.toLowerCase())) {
@@ -504,6 +771,8 @@ public final class Arena {
                 this.defaultTeam = arenaTeam;
             }
 
+            markDirty();
+            updateMatchmaker();
             return arenaTeam;
         }
 
@@ -513,38 +782,111 @@ public final class Arena {
         }
     }
 
+    /**
+     * <p>Queues an update of the join sign for the next tick</p>
+     * <p>Multiple requests within the same tick only update the sign once,
+     * so this should be preferred over updateSign() for frequent changes
+     * such as players joining or leaving.</p>
+     */
+    public void queueSignUpdate() {
+
+        // Deferred signs are already queued once their chunk loads and
+        // signs of arenas that aren't loaded still show the lobby
+        if (loaded && signLoc != null && !signDeferred) {
+            plugin.getApi().getSignUpdater().queue(this);
+        }
+    }
+
     /**
      * <p>Updates the join sign with the current state's details</p>
-     * <p>If the sign location no longer points to a sign, the location will
-     * be unregistered instead</p>
+     * <p>The sign block is only touched when the rendered lines differ
+     * from what was last written to it. If the sign location no longer
+     * points to a sign, the location will be unregistered instead</p>
+     * <p>If the chunk of the sign is not loaded, the update is postponed
+     * until it is loaded rather than loading it, which includes signs in
+     * worlds that aren't loaded yet. Arenas that aren't loaded
+     * yet leave their sign as it is.</p>
      */
     public void updateSign() {
 
         // Requires a sign to be set
-        if (signLoc != null) {
-            BlockState state = signLoc.getBlock().getState();
+        if (loaded && signLoc != null) {
+
+            // Wait for the world and chunk instead of loading them
+            Location loc = signLoc.toLocation();
+            if (loc == null || !loc.getWorld().isChunkLoaded(signLoc.getBlockX() >> 4, signLoc.getBlockZ() >> 4)) {
+                plugin.getApi().getSignUpdater().defer(this);
+                return;
+            }
+
+            // Render the lines, checking if any of them changed
+            SignTemplate template = currentState.getSignTemplate();
+            boolean changed = false;
+            for (int i = 0; i < template.getLineCount(); i++) {
+                signBuffer.setLength(0);
+                template.render(i, this, signBuffer);
+                if (signText[i] == null || !signText[i].contentEquals(signBuffer)) {
+                    signText[i] = signBuffer.toString();
+                    changed = true;
+                }
+            }
+
+            // Nothing to update
+            if (!changed) {
+                return;
+            }
+
+            BlockState state = loc.getBlock().getState();
 
             // Not a valid sign
             if (state == null || !(state instanceof Sign)) {
+                plugin.getApi().getSignUpdater().cancel(this);
+                plugin.getApi().getSignIndex().unregister(this, signLoc);
                 signLoc = null;
+                Arrays.fill(signText, null);
+                markDirty();
                 return;
             }
 
             Sign sign = (Sign)state;
-            for (int i = 0; i < 4 && i < currentState.getSignLines().size(); i++) {
-                String line = currentState.getSignLines().get(i);
-                line = line.replace("%p", plugin.getPlugin().getName());
-                line = line.replace("%n", name);
-                line = line.replace("%x", maxPlayers + "");
-                line = line.replace("%c", players.size() + "");
-                line = line.replace("%s", currentState.getName());
-                line = line.replace('&', ChatColor.COLOR_CHAR);
-                sign.setLine(i, line);
+            for (int i = 0; i < template.getLineCount(); i++) {
+                sign.setLine(i, signText[i]);
             }
             sign.update();
         }
     }
 
+    /**
+     * Moves the arena to its new place in the matchmaking order
+     * after players joined or left or it changed otherwise
+     */
+    void updateMatchmaker() {
+
+        // States may change while the arena is still loading
+        if (loaded && currentState == null) {
+            return;
+        }
+
+        plugin.getMatchmaker().update(this);
+    }
+
+    /**
+     * @return true if the arena changed since it was last saved, false otherwise
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * <p>Flags the arena as changed so it is written on the next save</p>
+     * <p>All setters of the arena and its teams and states do this for you.
+     * If your states save their own data, call this whenever that data
+     * changes as unchanged arenas are skipped when saving.</p>
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
     /**
      * <p>Saves the initial data for the arena.</p>
      * <p>If you want to save your own data to the config, override this
@@ -559,6 +901,13 @@ public final class Arena {
      * </code>
      */
     public void save() {
+
+        // Nothing could have changed if the arena was never loaded
+        if (!loaded) {
+            dirty = false;
+            return;
+        }
+
         ConfigurationSection config = getConfig();
 
         // Definite values
@@ -572,10 +921,10 @@ public final class Arena {
         }
 
         // Sign location
-        config.set(ConfigValues.SIGN_LOC, DataParser.serializeLocation(signLoc));
+        config.set(ConfigValues.SIGN_LOC, signLoc == null ? null : signLoc.serialize());
 
         // Lobby location
-        config.set(ConfigValues.LOBBY_SPAWN, DataParser.serializeLocation(lobbyLoc));
+        config.set(ConfigValues.LOBBY_SPAWN, lobbyLoc == null ? null : lobbyLoc.serialize());
 
         // Default team
         if (defaultTeam != null) {
@@ -591,24 +940,17 @@ public final class Arena {
         for (ArenaState state : arenaStates.values()) {
             state.save();
         }
+
+        dirty = false;
     }
 
     /**
      * <p>Retrieves the configuration section for this arena</p>
-     * <p>This is a sub-section of the plugin data's configuration</p>
+     * <p>This is provided by the storage of the plugin data</p>
      *
      * @return configuration section
      */
     public ConfigurationSection getConfig() {
-
-        // Section exists
-        if (plugin.getConfig().contains(name)) {
-            return plugin.getConfig().getConfigurationSection(name);
-        }
-
-        // Section doesn't exist
-        else {
-            return plugin.getConfig().createSection(name);
-        }
+        return plugin.getArenaConfig(name);
     }
 }
@@ -0,0 +1,129 @@
+package com.sucy.minigame.arena;
+
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * <p>Shared clock driving the timers of every active arena state</p>
+ * <p>Rather than each state scheduling its own repeating task, states
+ * are placed on a hashed timing wheel with one slot per tick. The clock
+ * runs once per tick and updates the states in the current slot, so any
+ * number of arenas costs a single scheduled task and scheduling or
+ * cancelling a timer is a constant time list operation.</p>
+ * <p>States are linked directly into the wheel, so a state can only be
+ * scheduled once at a time. This is managed by ArenaState.pause() and
+ * ArenaState.unpause(), so you should not need to use this yourself.</p>
+ */
+public final class ArenaClock extends BukkitRunnable {
+
+    /**
+     * Ticks between timer updates of a state
+     */
+    public static final int PERIOD = 20;
+
+    private static final int WHEEL_SIZE = 20;
+
+    private final ArenaState[] wheel = new ArenaState[WHEEL_SIZE];
+
+    private ArenaState next;
+    private int cursor;
+
+    /**
+     * Advances the wheel by one tick, updating the timers that are due
+     */
+    @Override
+    public void run() {
+        cursor = (cursor + 1) % WHEEL_SIZE;
+
+        ArenaState state = wheel[cursor];
+        while (state != null) {
+
+            // Remember the next state in case this one gets unscheduled
+            next = state.clockNext;
+
+            if (state.clockRounds > 0) {
+                state.clockRounds--;
+            }
+            else {
+
+                // Reschedule before updating so the update can pause the state
+                unlink(state);
+                link(state, PERIOD);
+                state.updateTimer();
+            }
+
+            state = next;
+        }
+        next = null;
+    }
+
+    /**
+     * Schedules the timer of a state to update every PERIOD ticks
+     *
+     * @param state state to schedule
+     */
+    public void schedule(ArenaState state) {
+        if (!isScheduled(state)) {
+            link(state, PERIOD);
+        }
+    }
+
+    /**
+     * Stops updating the timer of a state
+     *
+     * @param state state to unschedule
+     */
+    public void unschedule(ArenaState state) {
+        if (isScheduled(state)) {
+            if (next == state) {
+                next = state.clockNext;
+            }
+            unlink(state);
+        }
+    }
+
+    /**
+     * @param state state to check
+     * @return      true if the state's timer is scheduled, false otherwise
+     */
+    public boolean isScheduled(ArenaState state) {
+        return state.clockSlot >= 0;
+    }
+
+    /**
+     * Adds a state at the head of the slot a number of ticks ahead
+     *
+     * @param state state to add
+     * @param delay ticks until the state is due
+     */
+    private void link(ArenaState state, int delay) {
+        int slot = (cursor + delay) % WHEEL_SIZE;
+        state.clockSlot = slot;
+        state.clockRounds = (delay - 1) / WHEEL_SIZE;
+        state.clockPrev = null;
+        state.clockNext = wheel[slot];
+        if (wheel[slot] != null) {
+            wheel[slot].clockPrev = state;
+        }
+        wheel[slot] = state;
+    }
+
+    /**
+     * Removes a state from its slot
+     *
+     * @param state state to remove
+     */
+    private void unlink(ArenaState state) {
+        if (state.clockPrev != null) {
+            state.clockPrev.clockNext = state.clockNext;
+        }
+        else wheel[state.clockSlot] = state.clockNext;
+
+        if (state.clockNext != null) {
+            state.clockNext.clockPrev = state.clockPrev;
+        }
+
+        state.clockPrev = null;
+        state.clockNext = null;
+        state.clockSlot = -1;
+    }
+}
@@ -0,0 +1,150 @@
+package com.sucy.minigame.arena;
+
+import com.sucy.minigame.plugin.ConfigValues;
+import com.sucy.minigame.util.StoredLocation;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Immutable description of a stored arena</p>
+ * <p>Parsing a descriptor only reads the arena's configuration section and
+ * doesn't touch the server, so it is safe to do on any thread. Locations
+ * are kept as stored locations that are bound to their world later on.
+ * The Arena is then built from the descriptor on the main thread.</p>
+ */
+public final class ArenaDescriptor {
+
+    private final String name;
+    private final int maxPlayers;
+    private final StoredLocation signLoc;
+    private final StoredLocation lobbyLoc;
+    private final String startState;
+    private final String defaultTeam;
+    private final Map<String, List<StoredLocation>> teams;
+    private final Map<String, String> states;
+
+    /**
+     * Constructor
+     *
+     * @param name        arena name
+     * @param maxPlayers  maximum players allowed in the arena
+     * @param signLoc     join sign location or null if not set
+     * @param lobbyLoc    lobby spawn location or null if not set
+     * @param startState  name of the starting game state or null if not set
+     * @param defaultTeam name of the default team or null if not set
+     * @param teams       spawn locations of each team by team name
+     * @param states      class names by state name
+     */
+    public ArenaDescriptor(String name, int maxPlayers, StoredLocation signLoc, StoredLocation lobbyLoc,
+                           String startState, String defaultTeam, Map<String, List<StoredLocation>> teams,
+                           Map<String, String> states) {
+        this.name = name;
+        this.maxPlayers = maxPlayers;
+        this.signLoc = signLoc;
+        this.lobbyLoc = lobbyLoc;
+        this.startState = startState;
+        this.defaultTeam = defaultTeam;
+        this.teams = Collections.unmodifiableMap(new LinkedHashMap<String, List<StoredLocation>>(teams));
+        this.states = Collections.unmodifiableMap(new LinkedHashMap<String, String>(states));
+    }
+
+    /**
+     * <p>Parses the descriptor of an arena from its configuration section</p>
+     * <p>This only reads from the section, so it is safe to call from
+     * another thread as long as nothing modifies the section meanwhile.</p>
+     *
+     * @param name   arena name
+     * @param config configuration section of the arena
+     * @return       parsed descriptor
+     */
+    public static ArenaDescriptor parse(String name, ConfigurationSection config) {
+
+        // Teams
+        LinkedHashMap<String, List<StoredLocation>> teams = new LinkedHashMap<String, List<StoredLocation>>();
+        ConfigurationSection teamConfig = config.getConfigurationSection(ConfigValues.TEAMS);
+        if (teamConfig != null) {
+            for (String team : teamConfig.getKeys(false)) {
+                teams.put(team, Collections.unmodifiableList(ArenaTeam.parseSpawns(teamConfig, team)));
+            }
+        }
+
+        // States
+        LinkedHashMap<String, String> states = new LinkedHashMap<String, String>();
+        ConfigurationSection stateConfig = config.getConfigurationSection(ConfigValues.STATES);
+        if (stateConfig != null) {
+            for (String state : stateConfig.getKeys(false)) {
+                states.put(state, stateConfig.getString(state + "." + ConfigValues.CLASS));
+            }
+        }
+
+        return new ArenaDescriptor(
+                name,
+                config.getInt(ConfigValues.MAX_PLAYERS),
+                StoredLocation.fromConfig(config, ConfigValues.SIGN_LOC),
+                StoredLocation.fromConfig(config, ConfigValues.LOBBY_SPAWN),
+                config.getString(ConfigValues.START_STATE),
+                config.getString(ConfigValues.DEFAULT_TEAM),
+                teams,
+                states);
+    }
+
+    /**
+     * @return arena name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return maximum players allowed in the arena
+     */
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    /**
+     * @return join sign location or null if not set
+     */
+    public StoredLocation getSignLoc() {
+        return signLoc;
+    }
+
+    /**
+     * @return lobby spawn location or null if not set
+     */
+    public StoredLocation getLobbyLoc() {
+        return lobbyLoc;
+    }
+
+    /**
+     * @return name of the starting game state or null if not set
+     */
+    public String getStartState() {
+        return startState;
+    }
+
+    /**
+     * @return name of the default team or null if not set
+     */
+    public String getDefaultTeam() {
+        return defaultTeam;
+    }
+
+    /**
+     * @return spawn locations of each team by team name
+     */
+    public Map<String, List<StoredLocation>> getTeams() {
+        return teams;
+    }
+
+    /**
+     * @return class names by state name
+     */
+    public Map<String, String> getStates() {
+        return states;
+    }
+}
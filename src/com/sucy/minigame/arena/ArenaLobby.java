@@ -2,18 +2,22 @@ package com.sucy.minigame.arena;
 
 import com.sucy.minigame.plugin.ConfigValues;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * <p>The lobby state for all arenas</p>
  * <p>To extend the functionality of a lobby, use the events for
  * starting a game and players joining/leaving.</p>
+ * <p>While the arena is empty, the lobby stays dormant and does not
+ * tick at all. It wakes up again once the first player joins.</p>
  */
 public final class ArenaLobby extends ArenaState {
 
     public static final String STATE_NAME = "Lobby";
 
     private int minPlayers;
+    private boolean dormant;
 
     /**
      * <p>Creates a lobby state</p>
@@ -28,8 +32,8 @@ public final class ArenaLobby extends ArenaState {
         super(arena, STATE_NAME, true, true, timeLimit);
         this.minPlayers = minPlayers;
 
-        // Modify sign for a lobby
-        List<String> lines = getSignLines();
+        // Modify sign for a lobby without touching the shared defaults
+        List<String> lines = new ArrayList<String>(getSignLines());
         lines.set(3, "&5Lobby");
         setSignLines(lines);
     }
@@ -54,6 +58,63 @@ public final class ArenaLobby extends ArenaState {
         return minPlayers;
     }
 
+    /**
+     * @return true if the lobby is waiting for players without ticking, false otherwise
+     */
+    public boolean isDormant() {
+        return dormant;
+    }
+
+    /**
+     * Pauses the timer. A lobby paused this way will not be
+     * woken up by players joining.
+     */
+    @Override
+    public void pause() {
+        dormant = false;
+        super.pause();
+    }
+
+    /**
+     * Unpauses the timer, or goes dormant instead while there are no players
+     */
+    @Override
+    public void unpause() {
+        if (getArena().getPlayers().isEmpty()) {
+            dormant = isPaused();
+        }
+        else {
+            dormant = false;
+            super.unpause();
+        }
+    }
+
+    /**
+     * <p>Stops the timer of a running lobby until players join again</p>
+     * <p>This is handled automatically when the last player leaves,
+     * so you should not need to call this yourself.</p>
+     */
+    public void hibernate() {
+        if (!isPaused()) {
+            pause();
+            dormant = true;
+        }
+    }
+
+    /**
+     * <p>Restarts the timer of a dormant lobby from the full time limit</p>
+     * <p>This is handled automatically when a player joins,
+     * so you should not need to call this yourself.</p>
+     */
+    public void wake() {
+        if (dormant) {
+
+            // Don't carry over what was left of the countdown when it went dormant
+            timer = hasTimeLimit() ? timeLimit + 1 : 0;
+            unpause();
+        }
+    }
+
     /**
      * Resets the timer if there's not enough players
      */
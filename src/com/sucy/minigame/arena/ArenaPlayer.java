@@ -1,13 +1,15 @@
 package com.sucy.minigame.arena;
 
+import com.sucy.minigame.plugin.DataKey;
 import com.sucy.minigame.plugin.PluginData;
 import org.bukkit.GameMode;
-import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.UUID;
 
 /**
  * Player data while inside an arena
@@ -16,20 +18,30 @@ public class ArenaPlayer {
 
     private static final ItemStack[] NO_ARMOR = new ItemStack[4];
 
+    private static final Object[] NO_OBJECTS = new Object[0];
+    private static final int[]    NO_INTS    = new int[0];
+    private static final long[]   NO_LONGS   = new long[0];
+    private static final double[] NO_DOUBLES = new double[0];
+
     // Custom data
     private final HashMap<String, Object> data = new HashMap<String, Object>();
 
+    // Custom data by key slot, grown as keys are used
+    private Object[] objects = NO_OBJECTS;
+    private int[]    ints    = NO_INTS;
+    private long[]   longs   = NO_LONGS;
+    private double[] doubles = NO_DOUBLES;
+
     // Owner references
     private final Arena arena;
 
     // Backup data
+    private final UUID playerId;
     private final String playerName;
-    private final GameMode prevMode;
-    private final Location prevLoc;
-    private final ItemStack[] prevArmor;
-    private final ItemStack[] prevInv;
-    private final int prevLevel;
-    private final float prevExp;
+    private final PlayerSnapshot snapshot;
+
+    // Live player handle, cleared while the player is offline
+    private Player player;
 
     // Team in the arena
     private ArenaTeam team;
@@ -42,15 +54,13 @@ public class ArenaPlayer {
      */
     public ArenaPlayer(Arena arena, Player player) {
         this.arena = arena;
+        this.player = player;
 
-        // Backup player data
+        // Backup player data, journaling it in case the server goes down
+        playerId = player.getUniqueId();
         playerName = player.getName();
-        prevMode = player.getGameMode();
-        prevLoc = player.getLocation();
-        prevInv = player.getInventory().getContents();
-        prevArmor = player.getInventory().getArmorContents();
-        prevLevel = player.getLevel();
-        prevExp = player.getExp();
+        snapshot = PlayerSnapshot.capture(player);
+        arena.getPluginData().getApi().getInventoryJournal().snapshot(playerId, snapshot);
 
         // Clear the player inventory
         player.getInventory().clear();
@@ -63,6 +73,13 @@ public class ArenaPlayer {
         player.setExp(0);
     }
 
+    /**
+     * @return unique ID of the player
+     */
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
     /**
      * @return name of the player
      */
@@ -71,10 +88,28 @@ public class ArenaPlayer {
     }
 
     /**
-     * @return the player
+     * @return the player or null if they are currently offline
      */
     public Player getPlayer() {
-        return arena.getPluginData().getPlugin().getServer().getPlayer(playerName);
+        return player;
+    }
+
+    /**
+     * @return true if the player is online, false otherwise
+     */
+    public boolean isOnline() {
+        return player != null;
+    }
+
+    /**
+     * <p>Updates the live player handle</p>
+     * <p>This is handled automatically when the player quits or logs
+     * back in, so you should not call this yourself.</p>
+     *
+     * @param player new player handle or null if the player went offline
+     */
+    public void setPlayer(Player player) {
+        this.player = player;
     }
 
     /**
@@ -113,7 +148,7 @@ public class ArenaPlayer {
         if (this.team != null) {
             ArenaTeam team = this.team;
             this.team = null;
-            team.removeMember(playerName);
+            team.removeMember(playerId);
         }
     }
 
@@ -132,7 +167,9 @@ public class ArenaPlayer {
     }
 
     /**
-     * Attaches custom data to the player
+     * <p>Attaches custom data to the player</p>
+     * <p>For data read or written often, register a DataKey with the
+     * plugin data and use setData(DataKey, Object) instead.</p>
      *
      * @param key  key for the data
      * @param data value for the data
@@ -148,26 +185,193 @@ public class ArenaPlayer {
      * @return    attached data value or null if not found
      */
     public Object getData(String key) {
-        if (data.get(key) != null) {
-            return data.get(key);
+        return data.get(key);
+    }
+
+    /**
+     * Attaches custom data to the player
+     *
+     * @param key   registered key for the data
+     * @param value value for the data
+     * @param <T>   type of the data
+     */
+    public <T> void setData(DataKey<T> key, T value) {
+        key.checkOwner(arena.getPluginData());
+        int slot = key.getSlot();
+        if (slot >= objects.length) {
+            objects = Arrays.copyOf(objects, slot + 1);
+        }
+        objects[slot] = value;
+    }
+
+    /**
+     * Retrieves custom data from the player
+     *
+     * @param key registered key for the data
+     * @param <T> type of the data
+     * @return    attached data value or null if not set
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getData(DataKey<T> key) {
+        key.checkOwner(arena.getPluginData());
+        int slot = key.getSlot();
+        return slot < objects.length ? (T)objects[slot] : null;
+    }
+
+    /**
+     * Retrieves an int value of the player
+     *
+     * @param key registered key for the value
+     * @return    value or 0 if not set
+     */
+    public int getInt(DataKey.IntKey key) {
+        key.checkOwner(arena.getPluginData());
+        int slot = key.getSlot();
+        return slot < ints.length ? ints[slot] : 0;
+    }
+
+    /**
+     * Sets an int value of the player
+     *
+     * @param key   registered key for the value
+     * @param value new value
+     */
+    public void setInt(DataKey.IntKey key, int value) {
+        key.checkOwner(arena.getPluginData());
+        int slot = key.getSlot();
+        if (slot >= ints.length) {
+            ints = Arrays.copyOf(ints, slot + 1);
         }
-        else return null;
+        ints[slot] = value;
     }
 
     /**
-     * Restores the player data and leaves the arena
+     * Adds to an int value of the player
+     *
+     * @param key    registered key for the value
+     * @param amount amount to add
+     * @return       new value
+     */
+    public int addInt(DataKey.IntKey key, int amount) {
+        key.checkOwner(arena.getPluginData());
+        int slot = key.getSlot();
+        if (slot >= ints.length) {
+            ints = Arrays.copyOf(ints, slot + 1);
+        }
+        return ints[slot] += amount;
+    }
+
+    /**
+     * Retrieves a long value of the player
+     *
+     * @param key registered key for the value
+     * @return    value or 0 if not set
+     */
+    public long getLong(DataKey.LongKey key) {
+        key.checkOwner(arena.getPluginData());
+        int slot = key.getSlot();
+        return slot < longs.length ? longs[slot] : 0;
+    }
+
+    /**
+     * Sets a long value of the player
+     *
+     * @param key   registered key for the value
+     * @param value new value
+     */
+    public void setLong(DataKey.LongKey key, long value) {
+        key.checkOwner(arena.getPluginData());
+        int slot = key.getSlot();
+        if (slot >= longs.length) {
+            longs = Arrays.copyOf(longs, slot + 1);
+        }
+        longs[slot] = value;
+    }
+
+    /**
+     * Adds to a long value of the player
+     *
+     * @param key    registered key for the value
+     * @param amount amount to add
+     * @return       new value
+     */
+    public long addLong(DataKey.LongKey key, long amount) {
+        key.checkOwner(arena.getPluginData());
+        int slot = key.getSlot();
+        if (slot >= longs.length) {
+            longs = Arrays.copyOf(longs, slot + 1);
+        }
+        return longs[slot] += amount;
+    }
+
+    /**
+     * Retrieves a double value of the player
+     *
+     * @param key registered key for the value
+     * @return    value or 0 if not set
+     */
+    public double getDouble(DataKey.DoubleKey key) {
+        key.checkOwner(arena.getPluginData());
+        int slot = key.getSlot();
+        return slot < doubles.length ? doubles[slot] : 0;
+    }
+
+    /**
+     * Sets a double value of the player
+     *
+     * @param key   registered key for the value
+     * @param value new value
+     */
+    public void setDouble(DataKey.DoubleKey key, double value) {
+        key.checkOwner(arena.getPluginData());
+        int slot = key.getSlot();
+        if (slot >= doubles.length) {
+            doubles = Arrays.copyOf(doubles, slot + 1);
+        }
+        doubles[slot] = value;
+    }
+
+    /**
+     * Adds to a double value of the player
+     *
+     * @param key    registered key for the value
+     * @param amount amount to add
+     * @return       new value
+     */
+    public double addDouble(DataKey.DoubleKey key, double amount) {
+        key.checkOwner(arena.getPluginData());
+        int slot = key.getSlot();
+        if (slot >= doubles.length) {
+            doubles = Arrays.copyOf(doubles, slot + 1);
+        }
+        return doubles[slot] += amount;
+    }
+
+    /**
+     * @return snapshot of the player data from before joining the arena
+     */
+    public PlayerSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * <p>Restores the player data and leaves the arena</p>
+     * <p>If the player is offline, they are only removed from the arena
+     * as there is nobody to restore the data to. Their data is then
+     * restored from the journal the next time they log in.</p>
      */
     public void leaveArena() {
 
-        Player player = getPlayer();
+        Player player = this.player;
         arena.removePlayer(this);
 
-        player.setGameMode(prevMode);
-        player.getInventory().setContents(prevInv);
-        player.getInventory().setArmorContents(prevArmor);
-        player.setLevel(prevLevel);
-        player.setExp(prevExp);
-        player.updateInventory();
-        player.teleport(prevLoc);
+        // Nothing to restore to while offline
+        if (player == null) {
+            return;
+        }
+
+        snapshot.restore(player);
+        getPluginData().getApi().getInventoryJournal().restored(playerId);
+        this.player = null;
     }
 }
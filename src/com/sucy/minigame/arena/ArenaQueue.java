@@ -0,0 +1,254 @@
+package com.sucy.minigame.arena;
+
+import com.sucy.minigame.MinigameAPI;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * <p>Players waiting for a slot in a full arena</p>
+ * <p>Players trying to join a full arena are put in line and admitted
+ * automatically, first come first served, when a player leaves or the
+ * arena returns to its lobby. Optionally, players with certain permissions
+ * can be put in priority tiers that are admitted before everyone else.</p>
+ * <p>Each tier is a linked list of nodes that are also indexed by player,
+ * so adding, admitting and removing a player are all constant time.
+ * A player only waits for one arena at a time.</p>
+ */
+public final class ArenaQueue {
+
+    private static final String[] NO_TIERS = new String[0];
+
+    private final HashMap<UUID, Node> nodes = new HashMap<UUID, Node>();
+    private final Arena arena;
+
+    private String[] tiers = NO_TIERS;
+    private Node[] heads = new Node[1];
+    private Node[] tails = new Node[1];
+
+    /**
+     * Constructor
+     *
+     * @param arena arena the players are waiting for
+     */
+    ArenaQueue(Arena arena) {
+        this.arena = arena;
+    }
+
+    /**
+     * @return arena the players are waiting for
+     */
+    public Arena getArena() {
+        return arena;
+    }
+
+    /**
+     * <p>Sets the permissions of the priority tiers</p>
+     * <p>Players with the first permission are admitted first, then
+     * players with the second permission and so on. Players without
+     * any of the permissions are admitted last. Players already in
+     * line are moved to the tier of their permissions, keeping their
+     * order in line within that tier.</p>
+     *
+     * @param permissions permissions of the tiers in order of priority
+     */
+    public void setPriorityPermissions(String... permissions) {
+        Node[] oldHeads = heads;
+        tiers = permissions.clone();
+        heads = new Node[tiers.length + 1];
+        tails = new Node[tiers.length + 1];
+
+        // Put players already in line into the new tiers, walking the old
+        // tiers in order so players keep their order within each new tier
+        for (Node head : oldHeads) {
+            Node node = head;
+            while (node != null) {
+                Node next = node.next;
+                link(node, getTier(node.player));
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * <p>Puts a player in line for the arena</p>
+     * <p>If the player is waiting for another arena, they leave that
+     * line first.</p>
+     *
+     * @param player player to add
+     * @return       true if the player was added, false if already in line
+     */
+    public boolean add(Player player) {
+        UUID playerId = player.getUniqueId();
+        if (nodes.containsKey(playerId)) {
+            return false;
+        }
+
+        MinigameAPI api = arena.getPluginData().getApi();
+        ArenaQueue previous = api.getQueue(player);
+        if (previous != null) {
+            previous.remove(playerId);
+        }
+
+        Node node = new Node(player);
+        nodes.put(playerId, node);
+        link(node, getTier(player));
+        api.registerQueued(playerId, this);
+        return true;
+    }
+
+    /**
+     * Removes a player from the line
+     *
+     * @param playerId unique ID of the player
+     * @return         true if the player was in line, false otherwise
+     */
+    public boolean remove(UUID playerId) {
+        Node node = nodes.remove(playerId);
+        if (node == null) {
+            return false;
+        }
+
+        unlink(node);
+        arena.getPluginData().getApi().unregisterQueued(playerId, this);
+        return true;
+    }
+
+    /**
+     * Takes the next player out of the line
+     *
+     * @return next player or null if nobody is waiting
+     */
+    public Player poll() {
+        for (Node head : heads) {
+            if (head != null) {
+                remove(head.player.getUniqueId());
+                return head.player;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes every player from the line
+     */
+    public void clear() {
+        while (poll() != null) { }
+    }
+
+    /**
+     * Checks whether or not a player is in line
+     *
+     * @param playerId unique ID of the player
+     * @return         true if the player is in line, false otherwise
+     */
+    public boolean contains(UUID playerId) {
+        return nodes.containsKey(playerId);
+    }
+
+    /**
+     * <p>Retrieves the place of a player in line, starting at 1</p>
+     * <p>This has to walk the line up to the player.</p>
+     *
+     * @param playerId unique ID of the player
+     * @return         place in line or -1 if not in line
+     */
+    public int getPosition(UUID playerId) {
+        Node target = nodes.get(playerId);
+        if (target == null) {
+            return -1;
+        }
+
+        int position = 1;
+        for (Node head : heads) {
+            for (Node node = head; node != null; node = node.next) {
+                if (node == target) {
+                    return position;
+                }
+                position++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of players in line
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return true if nobody is waiting, false otherwise
+     */
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * Determines the tier of a player from their permissions
+     *
+     * @param player player to check
+     * @return       index of the tier
+     */
+    private int getTier(Player player) {
+        for (int i = 0; i < tiers.length; i++) {
+            if (player.hasPermission(tiers[i])) {
+                return i;
+            }
+        }
+        return tiers.length;
+    }
+
+    /**
+     * Appends a node to the end of a tier
+     *
+     * @param node node to append
+     * @param tier index of the tier
+     */
+    private void link(Node node, int tier) {
+        node.tier = tier;
+        node.prev = tails[tier];
+        node.next = null;
+        if (tails[tier] == null) {
+            heads[tier] = node;
+        }
+        else tails[tier].next = node;
+        tails[tier] = node;
+    }
+
+    /**
+     * Removes a node from its tier
+     *
+     * @param node node to remove
+     */
+    private void unlink(Node node) {
+        if (node.prev == null) {
+            heads[node.tier] = node.next;
+        }
+        else node.prev.next = node.next;
+
+        if (node.next == null) {
+            tails[node.tier] = node.prev;
+        }
+        else node.next.prev = node.prev;
+
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * Place of a player in line
+     */
+    private static final class Node {
+        private final Player player;
+        private int  tier;
+        private Node prev;
+        private Node next;
+
+        private Node(Player player) {
+            this.player = player;
+        }
+    }
+}
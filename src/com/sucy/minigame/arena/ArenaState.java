@@ -3,7 +3,6 @@ package com.sucy.minigame.arena;
 import com.sucy.minigame.plugin.ConfigValues;
 import com.sucy.minigame.plugin.PluginData;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.Arrays;
 import java.util.List;
@@ -21,12 +20,21 @@ public abstract class ArenaState {
     protected final String name;
 
     protected List<String> signLines;
-    protected BukkitRunnable task;
     protected boolean expTimer;
     protected boolean canJoin;
     protected int timeLimit;
     protected int timer;
 
+    // Compiled form of the sign lines
+    private SignTemplate signTemplate;
+    private List<String> compiledLines;
+
+    // Position on the arena clock, managed by ArenaClock
+    ArenaState clockPrev;
+    ArenaState clockNext;
+    int clockSlot = -1;
+    int clockRounds;
+
     /**
      * <p>Creates an arena state that doesn't have a time limit.</p>
      * <p>The experience timer if enabled will count the elapsed time instead.</p>
@@ -123,6 +131,11 @@ public abstract class ArenaState {
      */
     public void setCanPlayersJoin(boolean value) {
         canJoin = value;
+        arena.markDirty();
+        arena.updateMatchmaker();
+        if (value) {
+            arena.admitQueued();
+        }
     }
 
     /**
@@ -139,6 +152,7 @@ public abstract class ArenaState {
      */
     public void setTimerEnabled(boolean value) {
         expTimer = value;
+        arena.markDirty();
     }
 
     /**
@@ -161,7 +175,7 @@ public abstract class ArenaState {
      * @return true if paused, false otherwise
      */
     public boolean isPaused() {
-        return task == null;
+        return clockSlot < 0;
     }
 
     /**
@@ -171,6 +185,22 @@ public abstract class ArenaState {
         return signLines;
     }
 
+    /**
+     * <p>Retrieves the compiled form of the sign lines</p>
+     * <p>The lines are compiled again whenever a different list is set.
+     * If you modify the list returned by getSignLines(), pass it to
+     * setSignLines(List) afterwards so that the changes are picked up.</p>
+     *
+     * @return compiled sign lines
+     */
+    public SignTemplate getSignTemplate() {
+        if (signTemplate == null || compiledLines != signLines) {
+            signTemplate = new SignTemplate(signLines);
+            compiledLines = signLines;
+        }
+        return signTemplate;
+    }
+
     /**
      * <p>Sets the lines for the arena join sign for this state.</p>
      * <p>This accepts the & character for colors and uses a few filters
@@ -185,6 +215,8 @@ public abstract class ArenaState {
      */
     public void setSignLines(List<String> lines) {
         signLines = lines;
+        signTemplate = null;
+        arena.markDirty();
 
         // Update sign if this is the active state
         if (arena.getCurrentState() == this) {
@@ -199,8 +231,7 @@ public abstract class ArenaState {
 
         // Must not already be paused
         if (!isPaused()) {
-            task.cancel();
-            task = null;
+            getPluginData().getApi().getArenaClock().unschedule(this);
         }
     }
 
@@ -211,13 +242,7 @@ public abstract class ArenaState {
 
         // Must currently be paused
         if (isPaused()) {
-            task = new BukkitRunnable() {
-                @Override
-                public void run() {
-                    updateTimer();
-                }
-            };
-            task.runTaskTimer(arena.getPluginData().getPlugin(), 20, 20);
+            getPluginData().getApi().getArenaClock().schedule(this);
         }
     }
 
@@ -226,6 +251,7 @@ public abstract class ArenaState {
      */
     public void setTimeLimit(int limit) {
         timeLimit = limit;
+        arena.markDirty();
     }
 
     /**
@@ -267,7 +293,9 @@ public abstract class ArenaState {
         // Update exp bars if applicable
         if (expTimer) {
             for (ArenaPlayer player : arena.getPlayers()) {
-                player.getPlayer().setLevel(timer);
+                if (player.isOnline()) {
+                    player.getPlayer().setLevel(timer);
+                }
             }
         }
     }
@@ -282,6 +310,8 @@ public abstract class ArenaState {
      * <p>- exp-timer</p>
      * <p>- time-limit</p>
      * <p>- sign-lines</p>
+     * <p>Arenas are only saved when changed, so call getArena().markDirty()
+     * whenever your additional data changes.</p>
      */
     public void save() {
         ConfigurationSection config = getConfig();
@@ -1,35 +1,73 @@
 package com.sucy.minigame.arena;
 
-import com.sucy.minigame.util.DataParser;
 import com.sucy.minigame.plugin.ConfigValues;
+import com.sucy.minigame.util.StoredLocation;
 import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
 
 /**
  * A team definition for arenas
  */
 public class ArenaTeam {
 
-    private final HashMap<String, ArenaPlayer> members = new HashMap<String, ArenaPlayer>();
+    private static final Random RANDOM = new Random();
+
+    private final HashMap<UUID, ArenaPlayer> members = new HashMap<UUID, ArenaPlayer>();
 
     private final Arena arena;
     private final String name;
 
-    private Location spawn;
+    // Spawn points of the team
+    private final ArrayList<StoredLocation> spawns = new ArrayList<StoredLocation>();
+
+    // Whether each spawn point is safe to stand on or null if it wasn't
+    // checked yet, along with the generation of its world when checked
+    private final ArrayList<Boolean> safety = new ArrayList<Boolean>();
+    private final ArrayList<Integer> checkedIn = new ArrayList<Integer>();
+
+    // Spawn points to use, rebuilt after the spawn points or their checks
+    // change and handed out in a shuffled round-robin
+    private Location[] safeSpawns;
+    private int safeGeneration;
+    private int nextSpawn;
 
     /**
      * Constructor
      *
      * @param arena parent arena
      * @param name  team name
-     * @param spawn team spawn location
+     * @param spawn team spawn location, skipped if it or its world is null
      */
     public ArenaTeam(Arena arena, String name, Location spawn) {
         this.arena = arena;
         this.name = name;
-        this.spawn = spawn;
+        addChecked(spawn);
+    }
+
+    /**
+     * Loading constructor
+     *
+     * @param arena  parent arena
+     * @param name   team name
+     * @param spawns stored team spawn locations
+     */
+    ArenaTeam(Arena arena, String name, List<StoredLocation> spawns) {
+        this.arena = arena;
+        this.name = name;
+        for (StoredLocation spawn : spawns) {
+            this.spawns.add(spawn);
+            safety.add(null);
+            checkedIn.add(0);
+        }
     }
 
     /**
@@ -39,9 +77,36 @@ public class ArenaTeam {
      * @param name  team name
      */
     public ArenaTeam(Arena arena, String name) {
-        this.arena = arena;
-        this.name = name;
-        this.spawn = DataParser.parseLocation(arena.getConfig().getString(ConfigValues.TEAMS + "." + name));
+        this(arena, name, parseSpawns(arena.getConfig(), ConfigValues.TEAMS + "." + name));
+    }
+
+    /**
+     * <p>Parses the spawn locations of a team</p>
+     * <p>Teams with a single spawn store it as a string and teams
+     * with several spawns store a list of strings. Locations already
+     * decoded by the storage are used as they are.</p>
+     *
+     * @param config config to read from
+     * @param path   path of the team's spawns
+     * @return       parsed spawn locations, skipping invalid ones
+     */
+    static List<StoredLocation> parseSpawns(ConfigurationSection config, String path) {
+        ArrayList<StoredLocation> spawns = new ArrayList<StoredLocation>();
+        if (config.isList(path)) {
+            for (Object data : config.getList(path)) {
+                StoredLocation spawn = StoredLocation.fromValue(data);
+                if (spawn != null) {
+                    spawns.add(spawn);
+                }
+            }
+        }
+        else {
+            StoredLocation spawn = StoredLocation.fromConfig(config, path);
+            if (spawn != null) {
+                spawns.add(spawn);
+            }
+        }
+        return spawns;
     }
 
     /**
@@ -59,29 +124,276 @@ public class ArenaTeam {
     }
 
     /**
-     * @return spawn location for the team
+     * @return first spawn location for the team or null if not set or its world isn't loaded
      */
     public Location getSpawn() {
-        return spawn;
+        return spawns.isEmpty() ? null : spawns.get(0).toLocation();
+    }
+
+    /**
+     * @return all spawn locations for the team whose world is loaded
+     */
+    public List<Location> getSpawns() {
+        ArrayList<Location> locations = new ArrayList<Location>(spawns.size());
+        for (StoredLocation spawn : spawns) {
+            Location loc = spawn.toLocation();
+            if (loc != null) {
+                locations.add(loc);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * @return number of spawn locations for the team
+     */
+    public int getSpawnCount() {
+        return spawns.size();
+    }
+
+    /**
+     * @return stored spawn locations for the team
+     */
+    List<StoredLocation> getStoredSpawns() {
+        return spawns;
     }
 
     /**
-     * Sets the spawn location for the team
+     * Sets the spawn location for the team, replacing any other spawn locations
      *
-     * @param loc spawn location
+     * @param loc spawn location, none if it or its world is null
      */
     public void setSpawn(Location loc) {
-        spawn = loc;
+        spawns.clear();
+        safety.clear();
+        checkedIn.clear();
+        addChecked(loc);
+        spawnsChanged();
+    }
+
+    /**
+     * Adds a spawn location for the team
+     *
+     * @param loc spawn location, skipped if it or its world is null
+     */
+    public void addSpawn(Location loc) {
+        if (addChecked(loc)) {
+            spawnsChanged();
+        }
+    }
+
+    /**
+     * Removes a spawn location of the team
+     *
+     * @param index index of the spawn location
+     * @return      removed spawn location or null if it isn't loaded
+     */
+    public Location removeSpawn(int index) {
+        StoredLocation removed = spawns.remove(index);
+        safety.remove(index);
+        checkedIn.remove(index);
+        spawnsChanged();
+        return removed.toLocation();
+    }
+
+    /**
+     * Removes all spawn locations of the team
+     */
+    public void clearSpawns() {
+        spawns.clear();
+        safety.clear();
+        checkedIn.clear();
+        spawnsChanged();
+    }
+
+    /**
+     * <p>Adds a spawn point, checking it right away if its chunk is loaded
+     * as it usually is where the spawn is being set</p>
+     * <p>Locations without a world can't be stored and are skipped.</p>
+     *
+     * @param loc spawn location
+     * @return    true if added, false if the location or its world is null
+     */
+    private boolean addChecked(Location loc) {
+        StoredLocation spawn = StoredLocation.of(loc);
+        if (spawn == null) {
+            return false;
+        }
+
+        spawns.add(spawn);
+        safety.add(check(loc));
+        checkedIn.add(StoredLocation.getGeneration(spawn.getWorldName()));
+        return true;
+    }
+
+    /**
+     * <p>Checks the spawn points that weren't checked yet or whose world
+     * loaded or unloaded since, as long as their chunk is loaded</p>
+     * <p>This is done by the chunk warmer once the chunks around the spawn
+     * points are loaded, so games don't check blocks while starting.</p>
+     */
+    void checkSpawns() {
+        for (int i = 0; i < spawns.size(); i++) {
+            StoredLocation spawn = spawns.get(i);
+            int worldGeneration = StoredLocation.getGeneration(spawn.getWorldName());
+            if (safety.get(i) != null && checkedIn.get(i) == worldGeneration) {
+                continue;
+            }
+
+            Location loc = spawn.toLocation();
+            Boolean safe = loc == null ? null : check(loc);
+            if (safe != null) {
+                safety.set(i, safe);
+                checkedIn.set(i, worldGeneration);
+                safeSpawns = null;
+            }
+        }
+    }
+
+    /**
+     * Drops the spawns in use so they are rebuilt on next use
+     */
+    private void spawnsChanged() {
+        safeSpawns = null;
+        arena.markDirty();
+    }
+
+    /**
+     * <p>Retrieves the next spawn location of the team</p>
+     * <p>Spawn locations are handed out in turn, leaving out the
+     * locations found to be unsafe to stand on. Locations that weren't
+     * checked yet are used as well. If none of them are safe, all loaded
+     * spawn locations are used instead.</p>
+     *
+     * @return next spawn location or null if none are available
+     */
+    public Location nextSpawn() {
+        Location[] safe = getSafeSpawns();
+        if (safe.length == 0) {
+            return null;
+        }
+        if (nextSpawn >= safe.length) {
+            nextSpawn = 0;
+        }
+        return safe[nextSpawn++];
+    }
+
+    /**
+     * Shuffles the order in which spawn locations are handed out
+     * and starts over from the first one
+     */
+    public void shuffleSpawns() {
+        Location[] safe = getSafeSpawns();
+        for (int i = safe.length - 1; i > 0; i--) {
+            int j = RANDOM.nextInt(i + 1);
+            Location temp = safe[i];
+            safe[i] = safe[j];
+            safe[j] = temp;
+        }
+        nextSpawn = 0;
+    }
+
+    /**
+     * <p>Retrieves the spawn locations not known to be unsafe, rebuilding
+     * them if the spawns, their checks or the loaded worlds changed since</p>
+     * <p>This only uses the results of earlier checks and never looks at
+     * any blocks itself.</p>
+     *
+     * @return safe spawn locations
+     */
+    private Location[] getSafeSpawns() {
+        if (safeSpawns != null && safeGeneration == StoredLocation.getGeneration()) {
+            return safeSpawns;
+        }
+
+        ArrayList<Location> safe = new ArrayList<Location>(spawns.size());
+        ArrayList<Location> loaded = new ArrayList<Location>(spawns.size());
+        for (int i = 0; i < spawns.size(); i++) {
+            StoredLocation spawn = spawns.get(i);
+            Location loc = spawn.toLocation();
+            if (loc == null) {
+                continue;
+            }
+
+            // Checks from before the world was reloaded don't count
+            loaded.add(loc);
+            Boolean checked = safety.get(i);
+            if (checked == null || checked || checkedIn.get(i) != StoredLocation.getGeneration(spawn.getWorldName())) {
+                safe.add(loc);
+            }
+        }
+        if (safe.isEmpty()) {
+            safe.addAll(loaded);
+        }
+
+        safeSpawns = safe.toArray(new Location[safe.size()]);
+        safeGeneration = StoredLocation.getGeneration();
+        nextSpawn = 0;
+        return safeSpawns;
+    }
+
+    /**
+     * Checks a spawn location if its chunk is loaded
+     *
+     * @param loc location to check
+     * @return    true if safe, false if not or null if its chunk isn't loaded
+     */
+    private static Boolean check(Location loc) {
+        if (!loc.getWorld().isChunkLoaded(loc.getBlockX() >> 4, loc.getBlockZ() >> 4)) {
+            return null;
+        }
+        return isSafe(loc);
+    }
+
+    /**
+     * Checks whether or not a player can stand at a location without
+     * suffocating or falling
+     *
+     * @param loc location to check
+     * @return    true if the location is safe, false otherwise
+     */
+    private static boolean isSafe(Location loc) {
+        World world = loc.getWorld();
+        int x = loc.getBlockX();
+        int y = loc.getBlockY();
+        int z = loc.getBlockZ();
+        if (y < 1 || y + 1 >= world.getMaxHeight()) {
+            return false;
+        }
+
+        Block feet = world.getBlockAt(x, y, z);
+        Block head = world.getBlockAt(x, y + 1, z);
+        Block ground = world.getBlockAt(x, y - 1, z);
+        return !feet.getType().isSolid() && !feet.isLiquid()
+                && !head.getType().isSolid() && !head.isLiquid()
+                && ground.getType().isSolid();
     }
 
     /**
      * Retrieves a member of the team
      *
-     * @param playerName player playerName
-     * @return     player data
+     * @param playerId unique ID of the player
+     * @return         player data or null if not on the team
+     */
+    public ArenaPlayer getMember(UUID playerId) {
+        return members.get(playerId);
+    }
+
+    /**
+     * <p>Retrieves a member of the team by name</p>
+     * <p>This is only kept for compatibility and has to check every
+     * member of the team. Use getMember(UUID) instead when possible.</p>
+     *
+     * @param playerName player name
+     * @return           player data or null if not on the team
      */
     public ArenaPlayer getMember(String playerName) {
-        return members.get(playerName.toLowerCase());
+        for (ArenaPlayer player : members.values()) {
+            if (player.getPlayerName().equalsIgnoreCase(playerName)) {
+                return player;
+            }
+        }
+        return null;
     }
 
     /**
@@ -99,11 +411,32 @@ public class ArenaTeam {
     }
 
     /**
-     * Moves all team members to their spawn locations
+     * Moves all team members to their spawn locations, spreading
+     * them over the spawn locations in a random order
      */
     public void spawnPlayers() {
+        shuffleSpawns();
+        for (ArenaPlayer player : members.values()) {
+            Location loc = nextSpawn();
+            if (loc == null) {
+                return;
+            }
+            if (player.isOnline()) {
+                player.getPlayer().teleport(loc);
+            }
+        }
+    }
+
+    /**
+     * Queues all team members to be moved to their spawn locations,
+     * spreading them over the spawn locations in a random order
+     *
+     * @param batch batch of teleports to add the members to
+     */
+    public void queueSpawns(SpawnScheduler.Batch batch) {
+        shuffleSpawns();
         for (ArenaPlayer player : members.values()) {
-            player.getPlayer().teleport(spawn);
+            batch.add(player, nextSpawn());
         }
     }
 
@@ -113,24 +446,37 @@ public class ArenaTeam {
      * @param player player to add
      */
     public void addMember(ArenaPlayer player) {
-        if (!members.containsKey(player.getPlayerName().toLowerCase())) {
-            members.put(player.getPlayerName().toLowerCase(), player);
+        if (!members.containsKey(player.getPlayerId())) {
+            members.put(player.getPlayerId(), player);
             player.setTeam(this);
         }
     }
 
     /**
-     * @param playerName name of player to remove
-     * @return           data of the player that was removed
+     * Removes a player from the team
+     *
+     * @param playerId unique ID of the player to remove
+     * @return         data of the player that was removed or null if not on the team
      */
-    public ArenaPlayer removeMember(String playerName) {
-        if (members.containsKey(playerName.toLowerCase())) {
-            ArenaPlayer player = members.get(playerName.toLowerCase());
-            members.remove(playerName.toLowerCase());
+    public ArenaPlayer removeMember(UUID playerId) {
+        ArenaPlayer player = members.remove(playerId);
+        if (player != null) {
             player.leaveTeam();
-            return player;
         }
-        else return null;
+        return player;
+    }
+
+    /**
+     * <p>Removes a player from the team by name</p>
+     * <p>This is only kept for compatibility and has to check every
+     * member of the team. Use removeMember(UUID) instead when possible.</p>
+     *
+     * @param playerName name of player to remove
+     * @return           data of the player that was removed or null if not on the team
+     */
+    public ArenaPlayer removeMember(String playerName) {
+        ArenaPlayer player = getMember(playerName);
+        return player == null ? null : removeMember(player.getPlayerId());
     }
 
     /**
@@ -139,9 +485,9 @@ public class ArenaTeam {
      * @return players that were removed from the team
      */
     public Collection<ArenaPlayer> removeAllMembers() {
-        Collection<ArenaPlayer> removedPlayers = members.values();
-        for (String key : members.keySet()) {
-            removeMember(key);
+        Collection<ArenaPlayer> removedPlayers = new ArrayList<ArenaPlayer>(members.values());
+        for (ArenaPlayer player : removedPlayers) {
+            removeMember(player.getPlayerId());
         }
         return removedPlayers;
     }
@@ -150,6 +496,16 @@ public class ArenaTeam {
      * Saves the team to the config
      */
     public void save() {
-        arena.getConfig().set(ConfigValues.TEAMS + "." + name, DataParser.serializeLocation(spawn));
+        String path = ConfigValues.TEAMS + "." + name;
+        if (spawns.size() == 1) {
+            arena.getConfig().set(path, spawns.get(0).serialize());
+        }
+        else {
+            ArrayList<String> data = new ArrayList<String>(spawns.size());
+            for (StoredLocation spawn : spawns) {
+                data.add(spawn.serialize());
+            }
+            arena.getConfig().set(path, data);
+        }
     }
 }
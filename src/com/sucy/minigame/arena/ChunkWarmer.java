@@ -0,0 +1,246 @@
+package com.sucy.minigame.arena;
+
+import com.sucy.minigame.util.LongHashMap;
+import com.sucy.minigame.util.StoredLocation;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * <p>Loads and holds the chunks around the spawns of arenas about to start</p>
+ * <p>When a lobby has enough players, the chunks around the lobby and team
+ * spawns of the arena are loaded ahead of time, so they are usually loaded
+ * by the time the game starts. Their unloads are cancelled to keep them
+ * loaded until the arena releases them.</p>
+ * <p>The server has no way to load chunks in the background, so every load
+ * still blocks the main thread, and a chunk that has to be read from a slow
+ * disk or generated can stall the tick it is loaded in. This only spreads
+ * the loads out to one chunk per tick by default. Raise the budget to warm
+ * arenas faster if the disk keeps up, at the cost of longer ticks.</p>
+ * <p>Holds are counted per chunk, so chunks shared by several arenas stay
+ * loaded until every one of them released them.</p>
+ * <p>Once the chunks of an arena are loaded, its team spawns are checked
+ * for being safe to stand on, so starting a game doesn't need to.</p>
+ */
+public final class ChunkWarmer extends BukkitRunnable {
+
+    /**
+     * Default number of chunks loaded per tick
+     */
+    public static final int DEFAULT_BUDGET = 1;
+
+    /**
+     * Radius in chunks around each spawn that is loaded
+     */
+    public static final int RADIUS = 1;
+
+    // Queued in place of a world to check the spawns of the next arena in
+    // queueChecks, compared by identity so no world name can match it
+    private static final String CHECK = new String("check");
+
+    private final HashMap<String, LongHashMap<Integer>> holds = new HashMap<String, LongHashMap<Integer>>();
+    private final HashMap<Arena, Hold> arenas = new HashMap<Arena, Hold>();
+    private final ArrayDeque<String> queueWorlds = new ArrayDeque<String>();
+    private final ArrayDeque<Long>   queueChunks = new ArrayDeque<Long>();
+    private final ArrayDeque<Arena>  queueChecks = new ArrayDeque<Arena>();
+
+    private int budget = DEFAULT_BUDGET;
+
+    /**
+     * @return maximum number of chunks loaded per tick
+     */
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * <p>Sets the maximum number of chunks loaded per tick</p>
+     * <p>Each load blocks the main thread, so higher budgets warm arenas
+     * faster but can make ticks take longer.</p>
+     *
+     * @param budget chunks per tick, at least 1
+     */
+    public void setBudget(int budget) {
+        this.budget = Math.max(1, budget);
+    }
+
+    /**
+     * Checks whether or not an arena is holding chunks
+     *
+     * @param arena arena to check
+     * @return      true if the arena holds chunks, false otherwise
+     */
+    public boolean isWarm(Arena arena) {
+        return arenas.containsKey(arena);
+    }
+
+    /**
+     * <p>Holds the chunks around the given locations for an arena and
+     * queues them to load</p>
+     * <p>Locations in worlds that aren't loaded are skipped. This does
+     * nothing if the arena already holds chunks.</p>
+     *
+     * @param arena     arena to hold the chunks for
+     * @param locations locations to hold the chunks around
+     */
+    public void warm(Arena arena, Collection<StoredLocation> locations) {
+        if (arenas.containsKey(arena)) {
+            return;
+        }
+
+        Hold hold = new Hold();
+        for (StoredLocation loc : locations) {
+            if (loc == null || StoredLocation.getWorld(loc.getWorldName()) == null) {
+                continue;
+            }
+
+            int centerX = loc.getBlockX() >> 4;
+            int centerZ = loc.getBlockZ() >> 4;
+            for (int x = centerX - RADIUS; x <= centerX + RADIUS; x++) {
+                for (int z = centerZ - RADIUS; z <= centerZ + RADIUS; z++) {
+                    hold.add(loc.getWorldName(), SignIndex.chunkKey(x, z));
+                }
+            }
+        }
+
+        for (int i = 0; i < hold.worlds.size(); i++) {
+            String world = hold.worlds.get(i);
+            long chunk = hold.chunks.get(i);
+            if (acquire(world, chunk)) {
+                queueWorlds.add(world);
+                queueChunks.add(chunk);
+            }
+        }
+        arenas.put(arena, hold);
+
+        // Chunks held by other arenas were queued before these,
+        // so every chunk of the arena is loaded by the time this runs
+        queueWorlds.add(CHECK);
+        queueChunks.add(0L);
+        queueChecks.add(arena);
+    }
+
+    /**
+     * <p>Releases the chunks held for an arena</p>
+     * <p>Chunks no longer held by any arena are queued to unload again,
+     * unless players are near them.</p>
+     *
+     * @param arena arena to release the chunks of
+     */
+    public void release(Arena arena) {
+        Hold hold = arenas.remove(arena);
+        if (hold == null) {
+            return;
+        }
+
+        for (int i = 0; i < hold.worlds.size(); i++) {
+            String world = hold.worlds.get(i);
+            LongHashMap<Integer> chunks = holds.get(world);
+            long chunk = hold.chunks.get(i);
+            int count = chunks.get(chunk);
+            if (count <= 1) {
+                chunks.remove(chunk);
+                World loaded = StoredLocation.getWorld(world);
+                if (loaded != null) {
+                    loaded.unloadChunkRequest((int)(chunk >> 32), (int)chunk);
+                }
+            }
+            else chunks.put(chunk, count - 1);
+
+            if (chunks.isEmpty()) {
+                holds.remove(world);
+            }
+        }
+    }
+
+    /**
+     * Checks whether or not a chunk is held by any arena
+     *
+     * @param world  world of the chunk
+     * @param chunkX chunk X coordinate
+     * @param chunkZ chunk Z coordinate
+     * @return       true if the chunk is held, false otherwise
+     */
+    public boolean isHeld(World world, int chunkX, int chunkZ) {
+        LongHashMap<Integer> chunks = holds.get(world.getName());
+        return chunks != null && chunks.containsKey(SignIndex.chunkKey(chunkX, chunkZ));
+    }
+
+    /**
+     * Loads queued chunks and checks the spawns of arenas whose
+     * chunks are loaded, up to the budget
+     */
+    @Override
+    public void run() {
+        int remaining = budget;
+        while (remaining > 0 && !queueWorlds.isEmpty()) {
+            String name = queueWorlds.poll();
+            long chunk = queueChunks.poll();
+
+            // Check the spawns of an arena whose chunks are all loaded now
+            if (name == CHECK) {
+                Arena arena = queueChecks.poll();
+                if (arenas.containsKey(arena)) {
+                    arena.checkSpawns();
+                    remaining--;
+                }
+                continue;
+            }
+
+            // Released before its turn
+            LongHashMap<Integer> chunks = holds.get(name);
+            if (chunks == null || !chunks.containsKey(chunk)) {
+                continue;
+            }
+
+            World world = StoredLocation.getWorld(name);
+            int x = (int)(chunk >> 32);
+            int z = (int)chunk;
+            if (world != null && !world.isChunkLoaded(x, z)) {
+                world.loadChunk(x, z);
+                remaining--;
+            }
+        }
+    }
+
+    /**
+     * Increments the hold count of a chunk
+     *
+     * @param world name of the world
+     * @param chunk packed chunk coordinates
+     * @return      true if the chunk wasn't held before, false otherwise
+     */
+    private boolean acquire(String world, long chunk) {
+        LongHashMap<Integer> chunks = holds.get(world);
+        if (chunks == null) {
+            chunks = new LongHashMap<Integer>();
+            holds.put(world, chunks);
+        }
+
+        Integer count = chunks.get(chunk);
+        chunks.put(chunk, count == null ? 1 : count + 1);
+        return count == null;
+    }
+
+    /**
+     * Distinct chunks held for a single arena
+     */
+    private static final class Hold {
+        private final ArrayList<String> worlds = new ArrayList<String>();
+        private final ArrayList<Long>   chunks = new ArrayList<Long>();
+
+        private void add(String world, long chunk) {
+            for (int i = 0; i < worlds.size(); i++) {
+                if (chunks.get(i) == chunk && worlds.get(i).equals(world)) {
+                    return;
+                }
+            }
+            worlds.add(world);
+            chunks.add(chunk);
+        }
+    }
+}
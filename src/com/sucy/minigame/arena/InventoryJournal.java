@@ -0,0 +1,294 @@
+package com.sucy.minigame.arena;
+
+import com.sucy.minigame.MinigameAPI;
+import org.bukkit.entity.Player;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Append-only journal of the player data replaced while in an arena</p>
+ * <p>When a player joins an arena, a snapshot record of their data is
+ * appended to their journal file and when the data is restored, a
+ * restored record is appended and the file is removed. Both are written
+ * on the I/O thread, so joining an arena never waits on the disk.</p>
+ * <p>A journal ending in a snapshot means the data was never restored,
+ * for example because the server crashed mid-match or the player was
+ * offline when the game ended. The data is then restored from the
+ * journal the next time the player logs in.</p>
+ * <p>Each record is framed by its type, length and checksum so that a
+ * record torn by a crash is detected and ignored.</p>
+ */
+public final class InventoryJournal {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte SNAPSHOT = 1;
+    private static final byte RESTORED = 2;
+
+    // Number of snapshots and restores of each player so far, to tell when
+    // a recovery read from the journal is out of date. Only used on the main thread.
+    private final HashMap<UUID, Integer> sequences = new HashMap<UUID, Integer>();
+
+    private final MinigameAPI api;
+    private final File folder;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor
+     *
+     * @param api      API reference
+     * @param folder   folder to keep the journals in
+     * @param executor executor to read and write the journals on
+     */
+    public InventoryJournal(MinigameAPI api, File folder, ExecutorService executor) {
+        this.api = api;
+        this.folder = folder;
+        this.executor = executor;
+    }
+
+    /**
+     * Appends a snapshot of a player's data to their journal
+     *
+     * @param playerId unique ID of the player
+     * @param snapshot snapshot of the player's data
+     */
+    public void snapshot(final UUID playerId, final PlayerSnapshot snapshot) {
+        advance(playerId);
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                append(playerId, SNAPSHOT, snapshot.serialize().getBytes(UTF_8));
+            }
+        });
+    }
+
+    /**
+     * Marks the last snapshot of a player as restored and removes their journal
+     *
+     * @param playerId unique ID of the player
+     */
+    public void restored(final UUID playerId) {
+        advance(playerId);
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                if (append(playerId, RESTORED, new byte[0])) {
+                    getFile(playerId).delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * <p>Restores the data of a player from their journal if it was
+     * never restored</p>
+     * <p>The journal is read on the I/O thread and the data is applied on
+     * the main thread afterwards, unless the player logged off, is in an
+     * arena or had their data saved or restored in the meantime. This is
+     * done automatically when players log in, so you should not need to
+     * call this yourself.</p>
+     *
+     * @param player player to recover
+     */
+    public void recover(final Player player) {
+        final UUID playerId = player.getUniqueId();
+        final int sequence = getSequence(playerId);
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                final PlayerSnapshot snapshot = read(playerId);
+                if (snapshot == null) {
+                    return;
+                }
+
+                api.getServer().getScheduler().runTask(api, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (player.isOnline() && api.getArenaPlayer(player) == null
+                                && getSequence(playerId) == sequence) {
+                            snapshot.restore(player);
+                            restored(playerId);
+                            api.getLogger().info("Restored the data of " + player.getName() + " from the journal");
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Retrieves how many snapshots and restores a player had so far
+     *
+     * @param playerId unique ID of the player
+     * @return         current sequence number of the player
+     */
+    private int getSequence(UUID playerId) {
+        Integer sequence = sequences.get(playerId);
+        return sequence == null ? 0 : sequence;
+    }
+
+    /**
+     * Bumps the sequence number of a player after a snapshot or restore
+     *
+     * @param playerId unique ID of the player
+     */
+    private void advance(UUID playerId) {
+        sequences.put(playerId, getSequence(playerId) + 1);
+    }
+
+    /**
+     * Runs a task on the executor, or right away if it was shut down
+     *
+     * @param task task to run
+     */
+    private void submit(Runnable task) {
+        try {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException ex) {
+            task.run();
+        }
+    }
+
+    /**
+     * @param playerId unique ID of the player
+     * @return         journal file of the player
+     */
+    private File getFile(UUID playerId) {
+        return new File(folder, playerId + ".journal");
+    }
+
+    /**
+     * Appends a record to the journal of a player and syncs it to the disk
+     *
+     * @param playerId unique ID of the player
+     * @param type     type of the record
+     * @param payload  data of the record
+     * @return         true if the record was written, false otherwise
+     */
+    private boolean append(UUID playerId, byte type, byte[] payload) {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            api.getLogger().severe("Unable to create the journal folder " + folder);
+            return false;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+
+        FileOutputStream file = null;
+        try {
+            file = new FileOutputStream(getFile(playerId), true);
+            DataOutputStream out = new DataOutputStream(file);
+            out.writeByte(type);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeInt((int)crc.getValue());
+            out.flush();
+            file.getFD().sync();
+            return true;
+        }
+        catch (IOException ex) {
+            api.getLogger().log(Level.SEVERE, "Failed to write the journal of " + playerId, ex);
+            return false;
+        }
+        finally {
+            close(file);
+        }
+    }
+
+    /**
+     * Reads the last snapshot of a player if it was never restored
+     *
+     * @param playerId unique ID of the player
+     * @return         snapshot to restore or null if there is none
+     */
+    private PlayerSnapshot read(UUID playerId) {
+        File file = getFile(playerId);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        byte[] pending = null;
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(file);
+            DataInputStream in = new DataInputStream(stream);
+            while (true) {
+                byte type = in.readByte();
+                int length = in.readInt();
+                if (length < 0 || length > file.length()) {
+                    api.getLogger().warning("Ignoring a damaged record in the journal of " + playerId);
+                    break;
+                }
+
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(type);
+                crc.update(payload);
+                if (in.readInt() != (int)crc.getValue()) {
+                    api.getLogger().warning("Ignoring a damaged record in the journal of " + playerId);
+                    break;
+                }
+
+                pending = type == SNAPSHOT ? payload : null;
+            }
+        }
+        catch (EOFException ex) {
+            // End of the journal or a record torn by a crash
+        }
+        catch (IOException ex) {
+            api.getLogger().log(Level.SEVERE, "Failed to read the journal of " + playerId, ex);
+            return null;
+        }
+        finally {
+            close(stream);
+        }
+
+        // Everything was restored already
+        if (pending == null) {
+            file.delete();
+            return null;
+        }
+
+        try {
+            return PlayerSnapshot.deserialize(new String(pending, UTF_8));
+        }
+        catch (Exception ex) {
+            api.getLogger().log(Level.SEVERE, "Failed to parse the journal of " + playerId, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Closes a stream, ignoring any errors
+     *
+     * @param stream stream to close
+     */
+    private static void close(Closeable stream) {
+        if (stream != null) {
+            try {
+                stream.close();
+            }
+            catch (IOException ex) {
+                // Nothing left to do
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.sucy.minigame.arena;
+
+import com.sucy.minigame.util.StoredLocation;
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Immutable copy of the player data that is replaced while in an arena</p>
+ * <p>This covers the game mode, location, inventory, armor, level and
+ * experience of the player. The items are copied when the snapshot is
+ * captured, so the snapshot can be serialized from another thread while
+ * the player keeps playing.</p>
+ */
+public final class PlayerSnapshot {
+
+    private static final String MODE      = "mode";
+    private static final String LOCATION  = "location";
+    private static final String INVENTORY = "inventory";
+    private static final String ARMOR     = "armor";
+    private static final String LEVEL     = "level";
+    private static final String EXP       = "exp";
+
+    private final GameMode mode;
+    private final StoredLocation loc;
+    private final ItemStack[] inv;
+    private final ItemStack[] armor;
+    private final int level;
+    private final float exp;
+
+    /**
+     * Constructor
+     *
+     * @param mode  game mode
+     * @param loc   location
+     * @param inv   inventory contents
+     * @param armor armor contents
+     * @param level experience level
+     * @param exp   experience progress
+     */
+    private PlayerSnapshot(GameMode mode, StoredLocation loc, ItemStack[] inv, ItemStack[] armor, int level, float exp) {
+        this.mode = mode;
+        this.loc = loc;
+        this.inv = inv;
+        this.armor = armor;
+        this.level = level;
+        this.exp = exp;
+    }
+
+    /**
+     * Captures the current data of a player
+     *
+     * @param player player to capture
+     * @return       snapshot of the player
+     */
+    public static PlayerSnapshot capture(Player player) {
+        return new PlayerSnapshot(
+                player.getGameMode(),
+                StoredLocation.of(player.getLocation()),
+                copy(player.getInventory().getContents()),
+                copy(player.getInventory().getArmorContents()),
+                player.getLevel(),
+                player.getExp());
+    }
+
+    /**
+     * Copies items so later changes to the player's inventory don't affect them
+     *
+     * @param items items to copy
+     * @return      copied items
+     */
+    private static ItemStack[] copy(ItemStack[] items) {
+        ItemStack[] copy = new ItemStack[items.length];
+        for (int i = 0; i < items.length; i++) {
+            copy[i] = items[i] == null ? null : items[i].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Restores the captured data to a player
+     *
+     * @param player player to restore
+     */
+    public void restore(Player player) {
+        player.setGameMode(mode);
+        player.getInventory().setContents(inv);
+        player.getInventory().setArmorContents(armor);
+        player.setLevel(level);
+        player.setExp(exp);
+        player.updateInventory();
+
+        Location prevLoc = loc == null ? null : loc.toLocation();
+        if (prevLoc != null) {
+            player.teleport(prevLoc);
+        }
+    }
+
+    /**
+     * <p>Serializes the snapshot to YAML</p>
+     * <p>This doesn't touch the server, so it is safe to call from any thread.</p>
+     *
+     * @return serialized snapshot
+     */
+    public String serialize() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set(MODE, mode.name());
+        config.set(LOCATION, loc == null ? null : loc.serialize());
+        config.set(INVENTORY, Arrays.asList(inv));
+        config.set(ARMOR, Arrays.asList(armor));
+        config.set(LEVEL, level);
+        config.set(EXP, (double)exp);
+        return config.saveToString();
+    }
+
+    /**
+     * <p>Parses a snapshot serialized with serialize()</p>
+     * <p>This doesn't touch the server, so it is safe to call from any thread.</p>
+     *
+     * @param data serialized snapshot
+     * @return     parsed snapshot
+     * @throws InvalidConfigurationException if the data is not a valid snapshot
+     */
+    public static PlayerSnapshot deserialize(String data) throws InvalidConfigurationException {
+        YamlConfiguration config = new YamlConfiguration();
+        config.loadFromString(data);
+
+        try {
+            return new PlayerSnapshot(
+                    GameMode.valueOf(config.getString(MODE)),
+                    StoredLocation.parse(config.getString(LOCATION)),
+                    toItems(config.getList(INVENTORY)),
+                    toItems(config.getList(ARMOR)),
+                    config.getInt(LEVEL),
+                    (float)config.getDouble(EXP));
+        }
+        catch (RuntimeException ex) {
+            throw new InvalidConfigurationException("Invalid player snapshot: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Converts a loaded list into an item array
+     *
+     * @param list loaded list
+     * @return     items of the list
+     */
+    private static ItemStack[] toItems(List<?> list) {
+        ItemStack[] items = new ItemStack[list.size()];
+        for (int i = 0; i < items.length; i++) {
+            Object item = list.get(i);
+            items[i] = item instanceof ItemStack ? (ItemStack)item : null;
+        }
+        return items;
+    }
+}
@@ -0,0 +1,211 @@
+package com.sucy.minigame.arena;
+
+import com.sucy.minigame.util.LongHashMap;
+import com.sucy.minigame.util.StoredLocation;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.HashMap;
+
+/**
+ * <p>Index of arena join signs by block coordinates</p>
+ * <p>Signs are grouped by world name and keyed by their packed block
+ * coordinates so that looking up the arena for a clicked or broken block
+ * is a constant time operation that doesn't allocate anything.</p>
+ * <p>A count of signs per chunk is kept alongside so that events
+ * firing for blocks all over the server can be rejected with a single
+ * probe unless the chunk actually hosts a join sign.</p>
+ * <p>The index is maintained by the arenas themselves whenever their sign
+ * location changes, so you should not need to modify it yourself.</p>
+ */
+public final class SignIndex {
+
+    private final HashMap<String, WorldSigns> worlds = new HashMap<String, WorldSigns>();
+
+    /**
+     * Retrieves the arena with a join sign at the given location
+     *
+     * @param loc location of the block
+     * @return    arena with a join sign there or null if not found
+     */
+    public Arena get(Location loc) {
+        if (loc == null || loc.getWorld() == null) {
+            return null;
+        }
+        return get(loc.getWorld(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+    }
+
+    /**
+     * Retrieves the arena with a join sign at the given block coordinates
+     *
+     * @param world world of the block
+     * @param x     block X coordinate
+     * @param y     block Y coordinate
+     * @param z     block Z coordinate
+     * @return      arena with a join sign there or null if not found
+     */
+    public Arena get(World world, int x, int y, int z) {
+        WorldSigns signs = worlds.get(world.getName());
+        if (signs == null) {
+            return null;
+        }
+        return signs.signs.get(blockKey(x, y, z));
+    }
+
+    /**
+     * Checks whether or not any join sign is registered within a chunk
+     *
+     * @param world  world of the chunk
+     * @param chunkX chunk X coordinate
+     * @param chunkZ chunk Z coordinate
+     * @return       true if the chunk hosts a join sign, false otherwise
+     */
+    public boolean hasSigns(World world, int chunkX, int chunkZ) {
+        WorldSigns signs = worlds.get(world.getName());
+        return signs != null && signs.chunks.containsKey(chunkKey(chunkX, chunkZ));
+    }
+
+    /**
+     * Registers the join sign of an arena
+     *
+     * @param arena arena owning the sign
+     * @param loc   location of the sign
+     */
+    public void register(Arena arena, Location loc) {
+        if (loc != null && loc.getWorld() != null) {
+            register(arena, loc.getWorld().getName(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        }
+    }
+
+    /**
+     * Registers the join sign of an arena. The world of the
+     * sign doesn't need to be loaded.
+     *
+     * @param arena arena owning the sign
+     * @param loc   location of the sign
+     */
+    public void register(Arena arena, StoredLocation loc) {
+        if (loc != null) {
+            register(arena, loc.getWorldName(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        }
+    }
+
+    /**
+     * Registers the join sign of an arena
+     *
+     * @param arena arena owning the sign
+     * @param world name of the sign's world
+     * @param x     block X coordinate
+     * @param y     block Y coordinate
+     * @param z     block Z coordinate
+     */
+    public void register(Arena arena, String world, int x, int y, int z) {
+        WorldSigns signs = worlds.get(world);
+        if (signs == null) {
+            signs = new WorldSigns();
+            worlds.put(world, signs);
+        }
+
+        // Only count the chunk when the block wasn't already claimed
+        if (signs.signs.put(blockKey(x, y, z), arena) == null) {
+            long chunk = chunkKey(x >> 4, z >> 4);
+            Integer count = signs.chunks.get(chunk);
+            signs.chunks.put(chunk, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Unregisters the join sign of an arena. If the location has
+     * since been claimed by another arena, this does nothing.
+     *
+     * @param arena arena owning the sign
+     * @param loc   location of the sign
+     */
+    public void unregister(Arena arena, Location loc) {
+        if (loc != null && loc.getWorld() != null) {
+            unregister(arena, loc.getWorld().getName(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        }
+    }
+
+    /**
+     * Unregisters the join sign of an arena. If the location has
+     * since been claimed by another arena, this does nothing.
+     *
+     * @param arena arena owning the sign
+     * @param loc   location of the sign
+     */
+    public void unregister(Arena arena, StoredLocation loc) {
+        if (loc != null) {
+            unregister(arena, loc.getWorldName(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        }
+    }
+
+    /**
+     * Unregisters the join sign of an arena. If the location has
+     * since been claimed by another arena, this does nothing.
+     *
+     * @param arena arena owning the sign
+     * @param world name of the sign's world
+     * @param x     block X coordinate
+     * @param y     block Y coordinate
+     * @param z     block Z coordinate
+     */
+    public void unregister(Arena arena, String world, int x, int y, int z) {
+        WorldSigns signs = worlds.get(world);
+        if (signs == null) {
+            return;
+        }
+
+        long key = blockKey(x, y, z);
+        if (signs.signs.get(key) == arena) {
+            signs.signs.remove(key);
+
+            // Drop the chunk from the summary once its last sign is gone
+            long chunk = chunkKey(x >> 4, z >> 4);
+            int count = signs.chunks.get(chunk);
+            if (count <= 1) {
+                signs.chunks.remove(chunk);
+            }
+            else signs.chunks.put(chunk, count - 1);
+
+            if (signs.signs.isEmpty()) {
+                worlds.remove(world);
+            }
+        }
+    }
+
+    /**
+     * <p>Packs block coordinates into a single long</p>
+     * <p>X and Z take 26 bits each and Y takes the remaining 12 bits,
+     * which covers the full range of valid block positions.</p>
+     *
+     * @param x block X coordinate
+     * @param y block Y coordinate
+     * @param z block Z coordinate
+     * @return  packed key
+     */
+    public static long blockKey(int x, int y, int z) {
+        return ((long)x & 0x3FFFFFFL) << 38
+                | ((long)z & 0x3FFFFFFL) << 12
+                | ((long)y & 0xFFFL);
+    }
+
+    /**
+     * Packs chunk coordinates into a single long
+     *
+     * @param chunkX chunk X coordinate
+     * @param chunkZ chunk Z coordinate
+     * @return       packed key
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long)chunkX << 32) | ((long)chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Signs registered within a single world
+     */
+    private static final class WorldSigns {
+        private final LongHashMap<Arena>   signs  = new LongHashMap<Arena>();
+        private final LongHashMap<Integer> chunks = new LongHashMap<Integer>();
+    }
+}
@@ -0,0 +1,102 @@
+package com.sucy.minigame.arena;
+
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Sign lines of an arena state compiled for fast rendering</p>
+ * <p>Each line is split once into its literal text, with color codes
+ * already translated, and the filters it uses. Rendering then only
+ * appends the pieces to a buffer instead of searching and replacing
+ * every filter on every update. The supported filters are:</p>
+ * <p>%p = plugin name</p>
+ * <p>%n = arena name</p>
+ * <p>%x = maximum players</p>
+ * <p>%c = current number of players</p>
+ * <p>%s = state name</p>
+ */
+public final class SignTemplate {
+
+    /**
+     * Maximum number of lines on a sign
+     */
+    public static final int MAX_LINES = 4;
+
+    private static final String FILTERS = "pnxcs";
+
+    private final String[][] literals;
+    private final char[][]   filters;
+
+    /**
+     * Compiles the lines for a sign
+     *
+     * @param lines lines to compile, only the first four are used
+     */
+    public SignTemplate(List<String> lines) {
+        int count = Math.min(MAX_LINES, lines.size());
+        literals = new String[count][];
+        filters = new char[count][];
+
+        for (int i = 0; i < count; i++) {
+            compile(i, lines.get(i).replace('&', ChatColor.COLOR_CHAR));
+        }
+    }
+
+    /**
+     * @return number of lines the template renders
+     */
+    public int getLineCount() {
+        return literals.length;
+    }
+
+    /**
+     * Renders a line of the template for an arena
+     *
+     * @param line  index of the line to render
+     * @param arena arena to render the line for
+     * @param out   buffer to append the line to
+     */
+    public void render(int line, Arena arena, StringBuilder out) {
+        String[] text = literals[line];
+        char[] keys = filters[line];
+
+        out.append(text[0]);
+        for (int i = 0; i < keys.length; i++) {
+            switch (keys[i]) {
+                case 'p': out.append(arena.getPluginData().getPlugin().getName()); break;
+                case 'n': out.append(arena.getName()); break;
+                case 'x': out.append(arena.getMaxPlayers()); break;
+                case 'c': out.append(arena.getPlayers().size()); break;
+                case 's': out.append(arena.getCurrentState().getName()); break;
+            }
+            out.append(text[i + 1]);
+        }
+    }
+
+    /**
+     * Splits a line into literal text around its filters
+     *
+     * @param index index of the line
+     * @param line  line with color codes translated
+     */
+    private void compile(int index, String line) {
+        ArrayList<String> text = new ArrayList<String>();
+        StringBuilder keys = new StringBuilder();
+
+        int start = 0;
+        for (int i = 0; i < line.length() - 1; i++) {
+            if (line.charAt(i) == '%' && FILTERS.indexOf(line.charAt(i + 1)) >= 0) {
+                text.add(line.substring(start, i));
+                keys.append(line.charAt(i + 1));
+                start = i + 2;
+                i++;
+            }
+        }
+        text.add(line.substring(start));
+
+        literals[index] = text.toArray(new String[text.size()]);
+        filters[index] = keys.toString().toCharArray();
+    }
+}
@@ -0,0 +1,183 @@
+package com.sucy.minigame.arena;
+
+import com.sucy.minigame.util.LongHashMap;
+import com.sucy.minigame.util.StoredLocation;
+import org.bukkit.Chunk;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * <p>Coalesces join sign updates of all arenas</p>
+ * <p>Arenas queue themselves here when their sign needs refreshing instead
+ * of updating it right away. Each arena is queued at most once, so any
+ * number of joins and leaves within a tick results in a single update.
+ * The queue is flushed once per tick, updating at most the budgeted
+ * number of signs and leaving the rest for the following ticks.</p>
+ * <p>Signs in unloaded chunks are never loaded just to update them. Such
+ * updates are parked by chunk and queued again once the chunk loads.</p>
+ */
+public final class SignUpdater extends BukkitRunnable {
+
+    /**
+     * Default number of signs updated per tick
+     */
+    public static final int DEFAULT_BUDGET = 32;
+
+    private final ArrayDeque<Arena> queue = new ArrayDeque<Arena>();
+    private final HashMap<String, LongHashMap<ArrayList<Arena>>> deferred
+            = new HashMap<String, LongHashMap<ArrayList<Arena>>>();
+
+    private int budget = DEFAULT_BUDGET;
+
+    /**
+     * @return maximum number of signs updated per tick
+     */
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the maximum number of signs updated per tick
+     *
+     * @param budget signs per tick, at least 1
+     */
+    public void setBudget(int budget) {
+        this.budget = Math.max(1, budget);
+    }
+
+    /**
+     * Queues the sign of an arena for an update if it isn't already queued
+     *
+     * @param arena arena to update the sign of
+     */
+    public void queue(Arena arena) {
+        if (!arena.signQueued) {
+            arena.signQueued = true;
+            queue.add(arena);
+        }
+    }
+
+    /**
+     * <p>Parks the sign update of an arena until the chunk of its sign
+     * loads, which may be in a world that isn't loaded yet</p>
+     * <p>This is used by Arena.updateSign() when the sign's chunk isn't
+     * loaded, so you should not need to call this yourself.</p>
+     *
+     * @param arena arena with a sign in an unloaded chunk
+     */
+    public void defer(Arena arena) {
+        StoredLocation loc = arena.getStoredSignLoc();
+        if (arena.signDeferred || loc == null) {
+            return;
+        }
+
+        String world = loc.getWorldName();
+        LongHashMap<ArrayList<Arena>> chunks = deferred.get(world);
+        if (chunks == null) {
+            chunks = new LongHashMap<ArrayList<Arena>>();
+            deferred.put(world, chunks);
+        }
+
+        long key = SignIndex.chunkKey(loc.getBlockX() >> 4, loc.getBlockZ() >> 4);
+        ArrayList<Arena> arenas = chunks.get(key);
+        if (arenas == null) {
+            arenas = new ArrayList<Arena>();
+            chunks.put(key, arenas);
+        }
+
+        arenas.add(arena);
+        arena.signDeferred = true;
+    }
+
+    /**
+     * <p>Drops the queued or parked sign update of an arena</p>
+     * <p>This must be called before the sign of the arena moves or the
+     * arena is removed, as parked updates are found by the current sign
+     * location. Arenas and plugin data do this themselves, so you should
+     * not need to call this yourself.</p>
+     *
+     * @param arena arena to drop the sign update of
+     */
+    public void cancel(Arena arena) {
+        if (arena.signQueued) {
+            queue.remove(arena);
+            arena.signQueued = false;
+        }
+        if (!arena.signDeferred) {
+            return;
+        }
+        arena.signDeferred = false;
+
+        StoredLocation loc = arena.getStoredSignLoc();
+        LongHashMap<ArrayList<Arena>> chunks = loc == null ? null : deferred.get(loc.getWorldName());
+        if (chunks == null) {
+            return;
+        }
+
+        long key = SignIndex.chunkKey(loc.getBlockX() >> 4, loc.getBlockZ() >> 4);
+        ArrayList<Arena> arenas = chunks.get(key);
+        if (arenas != null && arenas.remove(arena) && arenas.isEmpty()) {
+            chunks.remove(key);
+            if (chunks.isEmpty()) {
+                deferred.remove(loc.getWorldName());
+            }
+        }
+    }
+
+    /**
+     * Queues the sign updates that were waiting on a chunk
+     *
+     * @param chunk chunk that was loaded
+     */
+    public void chunkLoaded(Chunk chunk) {
+        LongHashMap<ArrayList<Arena>> chunks = deferred.get(chunk.getWorld().getName());
+        if (chunks == null) {
+            return;
+        }
+
+        ArrayList<Arena> arenas = chunks.remove(SignIndex.chunkKey(chunk.getX(), chunk.getZ()));
+        if (arenas == null) {
+            return;
+        }
+
+        for (Arena arena : arenas) {
+            arena.signDeferred = false;
+            queue(arena);
+        }
+        if (chunks.isEmpty()) {
+            deferred.remove(chunk.getWorld().getName());
+        }
+    }
+
+    /**
+     * Updates queued signs up to the budget
+     */
+    @Override
+    public void run() {
+        for (int i = 0; i < budget && !queue.isEmpty(); i++) {
+            update(queue.poll());
+        }
+    }
+
+    /**
+     * Updates every queued sign regardless of the budget
+     */
+    public void flush() {
+        while (!queue.isEmpty()) {
+            update(queue.poll());
+        }
+    }
+
+    /**
+     * Updates the sign of a dequeued arena
+     *
+     * @param arena arena to update
+     */
+    private void update(Arena arena) {
+        arena.signQueued = false;
+        arena.updateSign();
+    }
+}
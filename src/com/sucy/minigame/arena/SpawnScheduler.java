@@ -0,0 +1,178 @@
+package com.sucy.minigame.arena;
+
+import org.bukkit.Location;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * <p>Spreads the teleports of players moving to their spawns across ticks</p>
+ * <p>Teleporting every player of a large arena in the same tick causes a
+ * lag spike from all the chunk sends at once. Instead, the teleports are
+ * collected into a batch and at most the budgeted number of players is
+ * teleported each tick, across all batches. Once every player of a batch
+ * is teleported, its callback runs.</p>
+ * <p>Players that left the arena or went offline before their turn are
+ * skipped.</p>
+ */
+public final class SpawnScheduler extends BukkitRunnable {
+
+    /**
+     * Default number of players teleported per tick
+     */
+    public static final int DEFAULT_BUDGET = 10;
+
+    private final ArrayDeque<Batch> batches = new ArrayDeque<Batch>();
+
+    private int budget = DEFAULT_BUDGET;
+
+    /**
+     * @return maximum number of players teleported per tick
+     */
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the maximum number of players teleported per tick
+     *
+     * @param budget players per tick, at least 1
+     */
+    public void setBudget(int budget) {
+        this.budget = Math.max(1, budget);
+    }
+
+    /**
+     * Creates an empty batch of teleports for an arena
+     *
+     * @param arena    arena the players are in
+     * @param callback task to run once every player is teleported or null for none
+     * @return         empty batch to add the players to
+     */
+    public Batch createBatch(Arena arena, Runnable callback) {
+        return new Batch(arena, callback);
+    }
+
+    /**
+     * <p>Queues a batch of teleports</p>
+     * <p>An empty batch completes right away.</p>
+     *
+     * @param batch batch to queue
+     */
+    public void submit(Batch batch) {
+        if (batch.players.isEmpty()) {
+            batch.complete();
+        }
+        else batches.add(batch);
+    }
+
+    /**
+     * Drops the queued teleports of an arena without running their callbacks
+     *
+     * @param arena arena to drop the teleports of
+     * @return      true if any batch was dropped, false otherwise
+     */
+    public boolean cancel(Arena arena) {
+        boolean cancelled = false;
+        Iterator<Batch> iterator = batches.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().arena == arena) {
+                iterator.remove();
+                cancelled = true;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Checks whether or not an arena has teleports waiting
+     *
+     * @param arena arena to check
+     * @return      true if teleports are queued for the arena, false otherwise
+     */
+    public boolean isSpawning(Arena arena) {
+        for (Batch batch : batches) {
+            if (batch.arena == arena) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Teleports queued players up to the budget
+     */
+    @Override
+    public void run() {
+        int remaining = budget;
+        while (remaining > 0 && !batches.isEmpty()) {
+            Batch batch = batches.peek();
+
+            // Skip players that are gone without using up the budget
+            ArenaPlayer player = batch.players.poll();
+            Location target = batch.targets.poll();
+            if (player.isOnline() && batch.arena.getPlayer(player.getPlayerId()) == player) {
+                player.getPlayer().teleport(target);
+                remaining--;
+            }
+
+            if (batch.players.isEmpty()) {
+                batches.poll();
+                batch.complete();
+            }
+        }
+    }
+
+    /**
+     * Teleports of players in a single arena
+     */
+    public static final class Batch {
+
+        private final ArrayDeque<ArenaPlayer> players = new ArrayDeque<ArenaPlayer>();
+        private final ArrayDeque<Location>    targets = new ArrayDeque<Location>();
+
+        private final Arena arena;
+        private final Runnable callback;
+
+        /**
+         * Constructor
+         *
+         * @param arena    arena the players are in
+         * @param callback task to run once every player is teleported or null for none
+         */
+        private Batch(Arena arena, Runnable callback) {
+            this.arena = arena;
+            this.callback = callback;
+        }
+
+        /**
+         * @return arena the players are in
+         */
+        public Arena getArena() {
+            return arena;
+        }
+
+        /**
+         * Adds a player to teleport. Players without a target are ignored.
+         *
+         * @param player player to teleport
+         * @param target location to teleport the player to
+         */
+        public void add(ArenaPlayer player, Location target) {
+            if (target != null) {
+                players.add(player);
+                targets.add(target);
+            }
+        }
+
+        /**
+         * Runs the callback of the batch
+         */
+        private void complete() {
+            if (callback != null) {
+                callback.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.sucy.minigame.arena;
+
+/**
+ * <p>Creates arena states while loading arenas from the config</p>
+ * <p>Register one for each of your ArenaState classes through
+ * PluginData.registerStateFactory(Class, StateFactory) to skip looking up
+ * the class and its constructor when arenas are loaded. An example:</p>
+ * <code>
+ *     data.registerStateFactory(MyState.class, new StateFactory() {
+ *         \@Override
+ *         public ArenaState create(Arena arena, String name) {
+ *             return new MyState(arena, name);
+ *         }
+ *     });
+ * </code>
+ */
+public interface StateFactory {
+
+    /**
+     * Creates a state of an arena, loading its data from the config
+     *
+     * @param arena arena the state belongs to
+     * @param name  name of the state
+     * @return      loaded state
+     * @throws Exception if the state could not be created
+     */
+    public ArenaState create(Arena arena, String name) throws Exception;
+}
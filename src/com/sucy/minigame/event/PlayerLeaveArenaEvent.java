@@ -5,6 +5,8 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.Event;
 import org.bukkit.event.HandlerList;
 
+import java.util.UUID;
+
 /**
  * Event for when a player leaves an arena
  */
@@ -14,6 +16,8 @@ public class PlayerLeaveArenaEvent extends Event {
 
     private final Arena arena;
     private final Player player;
+    private final UUID playerId;
+    private final String playerName;
 
     /**
      * Constructor
@@ -22,8 +26,22 @@ public class PlayerLeaveArenaEvent extends Event {
      * @param player  player that left the arena
      */
     public PlayerLeaveArenaEvent(Arena arena, Player player) {
+        this(arena, player, player.getUniqueId(), player.getName());
+    }
+
+    /**
+     * Constructor for players that may be offline
+     *
+     * @param arena      arena the player left
+     * @param player     player that left the arena or null if offline
+     * @param playerId   unique ID of the player
+     * @param playerName name of the player
+     */
+    public PlayerLeaveArenaEvent(Arena arena, Player player, UUID playerId, String playerName) {
         this.arena = arena;
         this.player = player;
+        this.playerId = playerId;
+        this.playerName = playerName;
     }
 
     /**
@@ -34,12 +52,31 @@ public class PlayerLeaveArenaEvent extends Event {
     }
 
     /**
-     * @return the player who left
+     * <p>Retrieves the player who left</p>
+     * <p>Players that logged off during a game can be removed from the
+     * arena while offline, in which case this is null. Use getPlayerId()
+     * or getPlayerName() to identify them instead.</p>
+     *
+     * @return the player who left or null if they are offline
      */
     public Player getPlayer() {
         return player;
     }
 
+    /**
+     * @return unique ID of the player who left
+     */
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * @return name of the player who left
+     */
+    public String getPlayerName() {
+        return playerName;
+    }
+
     /**
      * @return handler list for the event
      */
@@ -0,0 +1,65 @@
+package com.sucy.minigame.plugin;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Backend holding the arena data of a plugin</p>
+ * <p>Arenas read and write their data through configuration sections
+ * provided by the storage, while the storage decides how those sections
+ * are laid out on disk and when they are written.</p>
+ */
+public interface ArenaStorage {
+
+    /**
+     * <p>Loads the stored data</p>
+     * <p>Parts of the data that can be parsed independently, such as
+     * separate files or records, are parsed on the workers. This still
+     * waits until everything is loaded.</p>
+     *
+     * @param workers executor to parse the data on
+     * @return        names of all stored arenas
+     */
+    public Collection<String> load(ExecutorService workers);
+
+    /**
+     * Retrieves the configuration section of an arena, creating it if needed
+     *
+     * @param arena arena name
+     * @return      configuration section of the arena
+     */
+    public ConfigurationSection getSection(String arena);
+
+    /**
+     * Removes the data of an arena
+     *
+     * @param arena arena name
+     */
+    public void remove(String arena);
+
+    /**
+     * Writes the data of arenas to disk in the background
+     *
+     * @param arenas names of the arenas that changed
+     * @return       future completing once the data is written or null if nothing was written
+     */
+    public Future<?> save(Collection<String> arenas);
+
+    /**
+     * Deletes all stored data
+     *
+     * @return future completing once the data is deleted
+     */
+    public Future<?> clear();
+
+    /**
+     * Reloads the data of a single arena from disk
+     *
+     * @param arena arena name
+     * @return      true if reloaded, false if not supported or not found
+     */
+    public boolean reload(String arena);
+}
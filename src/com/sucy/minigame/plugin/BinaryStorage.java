@@ -0,0 +1,619 @@
+package com.sucy.minigame.plugin;
+
+import com.sucy.minigame.util.Config;
+import com.sucy.minigame.util.StoredLocation;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+
+/**
+ * <p>Stores all arenas of a plugin in a compact binary arena-data.dat file</p>
+ * <p>The file holds the same tree as the YAML layout described by
+ * ConfigValues, so it can be converted to and from arena-data.yml without
+ * losing anything. If no binary file exists yet, an existing arena-data.yml
+ * is imported when loading.</p>
+ * <p>Format (version 1), all numbers big-endian:</p>
+ * <p>- int magic, short version</p>
+ * <p>- int string count followed by that many strings, each an int byte
+ * length and its UTF-8 bytes. Every key and string value (world, state and
+ * class names, ...) is stored only once here and referenced by its index
+ * everywhere else.</p>
+ * <p>- int arena count followed by one record per arena: int name index,
+ * int record length and the record itself, which is the tagged value of
+ * the arena's section.</p>
+ * <p>The locations of the join sign, the lobby and the team spawns are
+ * stored as raw doubles and floats instead of text and are loaded straight
+ * into StoredLocation values, so they are never turned back into text just
+ * to be parsed again. Any other data, like that of custom states, keeps its
+ * strings as they are.</p>
+ */
+public class BinaryStorage implements ArenaStorage {
+
+    private static final int   MAGIC   = 0x4D474144;
+    private static final short VERSION = 1;
+
+    private static final byte
+            SECTION  = 0,
+            STRING   = 1,
+            INT      = 2,
+            LONG     = 3,
+            DOUBLE   = 4,
+            BOOLEAN  = 5,
+            LOCATION = 6,
+            LIST     = 7,
+            YAML     = 8;
+
+    // Where a value is within an arena's section, deciding
+    // whether or not it is stored as a location
+    private static final int
+            IN_OTHER    = 0,
+            IN_ARENA    = 1,
+            IN_TEAMS    = 2,
+            IN_LOCATION = 3;
+
+    private final JavaPlugin plugin;
+    private final ExecutorService executor;
+    private final File file;
+    private final File yamlFile;
+
+    private YamlConfiguration data = new YamlConfiguration();
+
+    /**
+     * Constructor
+     *
+     * @param plugin   plugin owning the data
+     * @param executor executor to write files with
+     */
+    public BinaryStorage(JavaPlugin plugin, ExecutorService executor) {
+        this.plugin = plugin;
+        this.executor = executor;
+        this.file = new File(plugin.getDataFolder(), "arena-data.dat");
+        this.yamlFile = new File(plugin.getDataFolder(), "arena-data.yml");
+    }
+
+    /**
+     * <p>Loads the binary file, importing the YAML file if there is no binary file yet</p>
+     * <p>Each arena has its own record, so the records are decoded on the workers.</p>
+     *
+     * @param workers executor to decode the records on
+     * @return        names of all stored arenas
+     */
+    @Override
+    public Collection<String> load(ExecutorService workers) {
+        try {
+            if (file.exists()) {
+                data = read(file, workers);
+            }
+            else if (yamlFile.exists()) {
+                data = YamlConfiguration.loadConfiguration(yamlFile);
+                submit(Config.snapshot(data));
+            }
+        }
+        catch (IOException ex) {
+            plugin.getLogger().log(Level.SEVERE, "Could not load arena data from " + file, ex);
+        }
+        return new ArrayList<String>(data.getKeys(false));
+    }
+
+    /**
+     * Retrieves the configuration section of an arena, creating it if needed
+     *
+     * @param arena arena name
+     * @return      configuration section of the arena
+     */
+    @Override
+    public ConfigurationSection getSection(String arena) {
+
+        // Section exists
+        if (data.contains(arena)) {
+            return data.getConfigurationSection(arena);
+        }
+
+        // Section doesn't exist
+        else {
+            return data.createSection(arena);
+        }
+    }
+
+    /**
+     * Removes the data of an arena
+     *
+     * @param arena arena name
+     */
+    @Override
+    public void remove(String arena) {
+        data.set(arena, null);
+    }
+
+    /**
+     * Writes the whole file as the arenas share it
+     *
+     * @param arenas names of the arenas that changed
+     * @return       future completing once the data is written
+     */
+    @Override
+    public Future<?> save(Collection<String> arenas) {
+        return submit(Config.snapshot(data));
+    }
+
+    /**
+     * Deletes all stored data
+     *
+     * @return future completing once the data is deleted
+     */
+    @Override
+    public Future<?> clear() {
+        data = new YamlConfiguration();
+        return submit(Config.snapshot(data));
+    }
+
+    /**
+     * Single arenas can't be reloaded without the others
+     *
+     * @param arena arena name
+     * @return      false
+     */
+    @Override
+    public boolean reload(String arena) {
+        return false;
+    }
+
+    /**
+     * Converts a YAML arena data file into the binary format
+     *
+     * @param yaml   YAML file to read
+     * @param binary binary file to write
+     * @throws IOException when either file couldn't be accessed
+     */
+    public static void importYaml(File yaml, File binary) throws IOException {
+        write(binary, Config.snapshot(YamlConfiguration.loadConfiguration(yaml)));
+    }
+
+    /**
+     * Converts a binary arena data file into the YAML format
+     *
+     * @param binary binary file to read
+     * @param yaml   YAML file to write
+     * @throws IOException when either file couldn't be accessed
+     */
+    public static void exportYaml(File binary, File yaml) throws IOException {
+        YamlConfiguration data = read(binary, null);
+        locationsToText(data);
+        Config.replaceFile(yaml, data.saveToString().getBytes("UTF-8"));
+    }
+
+    /**
+     * Replaces the decoded locations in a section with their text so
+     * the section can be saved as YAML
+     *
+     * @param section section to convert
+     */
+    private static void locationsToText(ConfigurationSection section) {
+        for (String key : section.getKeys(false)) {
+            Object value = section.get(key);
+            if (value instanceof ConfigurationSection) {
+                locationsToText((ConfigurationSection)value);
+            }
+            else if (value instanceof StoredLocation) {
+                section.set(key, ((StoredLocation)value).serialize());
+            }
+            else if (value instanceof List) {
+                ArrayList<Object> list = new ArrayList<Object>((List<?>)value);
+                for (int i = 0; i < list.size(); i++) {
+                    if (list.get(i) instanceof StoredLocation) {
+                        list.set(i, ((StoredLocation)list.get(i)).serialize());
+                    }
+                }
+                section.set(key, list);
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the data on the executor
+     *
+     * @param snapshot immutable copy of the data
+     * @return         future completing once the data is written
+     */
+    private Future<?> submit(final Map<String, Object> snapshot) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(file, snapshot);
+                }
+                catch (IOException ex) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not save arena data to " + file, ex);
+                }
+            }
+        };
+
+        try {
+            return executor.submit(task);
+        }
+        catch (RejectedExecutionException ex) {
+            FutureTask<Object> now = new FutureTask<Object>(task, null);
+            now.run();
+            return now;
+        }
+    }
+
+    /**
+     * Reads a binary file into a configuration
+     *
+     * @param file    file to read
+     * @param workers executor to decode the arena records on or null to decode them right away
+     * @return        configuration with the file's data
+     * @throws IOException when the file couldn't be read or is invalid
+     */
+    private static YamlConfiguration read(File file, ExecutorService workers) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an arena data file: " + file);
+            }
+            short version = in.readShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported arena data version " + version + " in " + file);
+            }
+
+            // String table
+            final String[] strings = new String[in.readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                strings[i] = new String(bytes, "UTF-8");
+            }
+
+            // Arena records, decoded separately since they are independent
+            int arenas = in.readInt();
+            String[] names = new String[arenas];
+            ArrayList<Future<Object>> records = new ArrayList<Future<Object>>(arenas);
+            for (int i = 0; i < arenas; i++) {
+                names[i] = strings[in.readInt()];
+                final byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+                records.add(submit(workers, new Callable<Object>() {
+                    @Override
+                    public Object call() throws IOException {
+                        DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                        return readPayload(recordIn, strings, recordIn.readByte(), IN_ARENA);
+                    }
+                }));
+            }
+
+            // Put them together on this thread as the configuration isn't thread safe
+            YamlConfiguration config = new YamlConfiguration();
+            for (int i = 0; i < arenas; i++) {
+                Object value = records.get(i).get();
+                if (value instanceof Map) {
+                    config.createSection(names[i], (Map<?, ?>)value);
+                }
+                else config.set(names[i], value);
+            }
+            return config;
+        }
+        catch (EOFException ex) {
+            throw new IOException("Truncated arena data file: " + file, ex);
+        }
+        catch (ExecutionException ex) {
+            throw new IOException("Invalid arena record in " + file, ex.getCause());
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + file, ex);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes a record on the workers, or right away if there are none
+     * or they no longer accept tasks
+     *
+     * @param workers executor to decode on or null
+     * @param task    decoding task
+     * @return        future of the decoded value
+     */
+    private static Future<Object> submit(ExecutorService workers, Callable<Object> task) {
+        if (workers != null) {
+            try {
+                return workers.submit(task);
+            }
+            catch (RejectedExecutionException ex) {
+                // Decode it right away instead
+            }
+        }
+        FutureTask<Object> now = new FutureTask<Object>(task);
+        now.run();
+        return now;
+    }
+
+    /**
+     * Reads the payload of a tagged value that is not put in a section
+     *
+     * @param in      input to read from
+     * @param strings string table
+     * @param tag     tag of the value
+     * @param context where the value is within the arena's section
+     * @return        value read
+     * @throws IOException when the data is invalid
+     */
+    private static Object readPayload(DataInputStream in, String[] strings, byte tag, int context)
+            throws IOException {
+        switch (tag) {
+            case SECTION:
+                LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String key = strings[in.readInt()];
+                    map.put(key, readPayload(in, strings, in.readByte(), childContext(context, key)));
+                }
+                return map;
+            case STRING:
+                return strings[in.readInt()];
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case LOCATION:
+                StoredLocation loc = new StoredLocation(strings[in.readInt()],
+                        in.readDouble(), in.readDouble(), in.readDouble(),
+                        in.readFloat(), in.readFloat());
+
+                // Older files stored any location-like string this way
+                return context == IN_LOCATION ? loc : loc.serialize();
+            case LIST:
+                int size = in.readInt();
+                ArrayList<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readPayload(in, strings, in.readByte(), context));
+                }
+                return list;
+            case YAML:
+                YamlConfiguration yaml = new YamlConfiguration();
+                try {
+                    yaml.loadFromString(strings[in.readInt()]);
+                }
+                catch (InvalidConfigurationException ex) {
+                    throw new IOException("Invalid value in arena data", ex);
+                }
+                return yaml.get("v");
+            default:
+                throw new IOException("Unknown value tag " + tag + " in arena data");
+        }
+    }
+
+    /**
+     * Encodes a snapshot and writes it to a file
+     *
+     * @param file     file to write
+     * @param snapshot immutable copy of the data
+     * @throws IOException when the file couldn't be written
+     */
+    private static void write(File file, Map<String, Object> snapshot) throws IOException {
+        StringTable strings = new StringTable();
+
+        // Encode the records first to fill the string table
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream recordOut = new DataOutputStream(record);
+        for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+            record.reset();
+            writeValue(recordOut, strings, entry.getValue(), IN_ARENA);
+            recordOut.flush();
+            out.writeInt(strings.index(entry.getKey()));
+            out.writeInt(record.size());
+            record.writeTo(out);
+        }
+        out.flush();
+
+        // Header and string table go in front of the records
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() + 1024);
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeInt(MAGIC);
+        header.writeShort(VERSION);
+        header.writeInt(strings.table.size());
+        for (String string : strings.table) {
+            byte[] encoded = string.getBytes("UTF-8");
+            header.writeInt(encoded.length);
+            header.write(encoded);
+        }
+        header.writeInt(snapshot.size());
+        header.flush();
+        records.writeTo(bytes);
+
+        Config.replaceFile(file, bytes.toByteArray());
+    }
+
+    /**
+     * Writes a tagged value
+     *
+     * @param out     output to write to
+     * @param strings string table
+     * @param value   value to write
+     * @param context where the value is within the arena's section
+     * @throws IOException when the value couldn't be written
+     */
+    private static void writeValue(DataOutputStream out, StringTable strings, Object value, int context)
+            throws IOException {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>)value;
+            out.writeByte(SECTION);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String key = entry.getKey().toString();
+                out.writeInt(strings.index(key));
+                writeValue(out, strings, entry.getValue(), childContext(context, key));
+            }
+        }
+        else if (value instanceof StoredLocation) {
+            StoredLocation loc = (StoredLocation)value;
+            out.writeByte(LOCATION);
+            out.writeInt(strings.index(loc.getWorldName()));
+            out.writeDouble(loc.getX());
+            out.writeDouble(loc.getY());
+            out.writeDouble(loc.getZ());
+            out.writeFloat(loc.getYaw());
+            out.writeFloat(loc.getPitch());
+        }
+        else if (value instanceof String) {
+            if (context != IN_LOCATION || !writeLocation(out, strings, (String)value)) {
+                out.writeByte(STRING);
+                out.writeInt(strings.index((String)value));
+            }
+        }
+        else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer)value);
+        }
+        else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long)value);
+        }
+        else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double)value);
+        }
+        else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean)value);
+        }
+        else if (value instanceof List) {
+            List<?> list = (List<?>)value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, strings, element, context);
+            }
+        }
+
+        // Anything else is kept as YAML text so it survives the round trip
+        else {
+            YamlConfiguration yaml = new YamlConfiguration();
+            yaml.set("v", value);
+            out.writeByte(YAML);
+            out.writeInt(strings.index(yaml.saveToString()));
+        }
+    }
+
+    /**
+     * Determines where a value of a section is within the arena's section
+     *
+     * @param context where the section is
+     * @param key     key of the value in the section
+     * @return        where the value is
+     */
+    private static int childContext(int context, String key) {
+        if (context == IN_ARENA) {
+            if (key.equals(ConfigValues.SIGN_LOC) || key.equals(ConfigValues.LOBBY_SPAWN)) {
+                return IN_LOCATION;
+            }
+            return key.equals(ConfigValues.TEAMS) ? IN_TEAMS : IN_OTHER;
+        }
+        return context == IN_TEAMS ? IN_LOCATION : IN_OTHER;
+    }
+
+    /**
+     * Writes a string as a raw location if it is a serialized location
+     * that would be restored exactly
+     *
+     * @param out     output to write to
+     * @param strings string table
+     * @param value   string to write
+     * @return        true if written as a location, false otherwise
+     * @throws IOException when the value couldn't be written
+     */
+    private static boolean writeLocation(DataOutputStream out, StringTable strings, String value)
+            throws IOException {
+        String[] pieces = new String[6];
+        int start = 0;
+        for (int i = 0; i < 5; i++) {
+            int end = value.indexOf(',', start);
+            if (end < 0) {
+                return false;
+            }
+            pieces[i] = value.substring(start, end);
+            start = end + 1;
+        }
+        pieces[5] = value.substring(start);
+        if (pieces[0].length() == 0 || pieces[5].indexOf(',') >= 0) {
+            return false;
+        }
+
+        double x, y, z;
+        float yaw, pitch;
+        try {
+            x = Double.parseDouble(pieces[1]);
+            y = Double.parseDouble(pieces[2]);
+            z = Double.parseDouble(pieces[3]);
+            yaw = Float.parseFloat(pieces[4]);
+            pitch = Float.parseFloat(pieces[5]);
+        }
+        catch (NumberFormatException ex) {
+            return false;
+        }
+
+        // Only use the compact form if reading it back gives the same text
+        if (!value.equals(pieces[0] + "," + x + "," + y + "," + z + "," + yaw + "," + pitch)) {
+            return false;
+        }
+
+        out.writeByte(LOCATION);
+        out.writeInt(strings.index(pieces[0]));
+        out.writeDouble(x);
+        out.writeDouble(y);
+        out.writeDouble(z);
+        out.writeFloat(yaw);
+        out.writeFloat(pitch);
+        return true;
+    }
+
+    /**
+     * Assigns each distinct string an index in the file's string table
+     */
+    private static final class StringTable {
+        private final HashMap<String, Integer> indices = new HashMap<String, Integer>();
+        private final ArrayList<String> table = new ArrayList<String>();
+
+        private int index(String string) {
+            Integer index = indices.get(string);
+            if (index == null) {
+                index = table.size();
+                indices.put(string, index);
+                table.add(string);
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.sucy.minigame.plugin;
+
+/**
+ * <p>Typed key for custom data attached to players in an arena</p>
+ * <p>Keys are registered once per plugin through PluginData.registerKey(String, Class)
+ * and map to a slot in an array on each player, so reading or writing
+ * the data is an array access instead of a map lookup. Keep the keys
+ * in static fields or fields of your plugin and reuse them.</p>
+ * <p>For numbers that change often, such as kills or score, use the
+ * IntKey, LongKey and DoubleKey keys instead. Those store the values
+ * as primitives so updating them doesn't allocate anything.</p>
+ *
+ * @param <T> type of the data
+ */
+public final class DataKey<T> extends SlotKey {
+
+    private final Class<T> type;
+
+    /**
+     * Constructor
+     *
+     * @param owner plugin data the key is registered with
+     * @param name  name of the key
+     * @param type  type of the data
+     * @param slot  slot index of the key
+     */
+    DataKey(PluginData owner, String name, Class<T> type, int slot) {
+        super(owner, name, slot);
+        this.type = type;
+    }
+
+    /**
+     * @return type of the data
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Key for an int value stored as a primitive
+     */
+    public static final class IntKey extends SlotKey {
+
+        /**
+         * Constructor
+         *
+         * @param owner plugin data the key is registered with
+         * @param name  name of the key
+         * @param slot  slot index of the key
+         */
+        IntKey(PluginData owner, String name, int slot) {
+            super(owner, name, slot);
+        }
+    }
+
+    /**
+     * Key for a long value stored as a primitive
+     */
+    public static final class LongKey extends SlotKey {
+
+        /**
+         * Constructor
+         *
+         * @param owner plugin data the key is registered with
+         * @param name  name of the key
+         * @param slot  slot index of the key
+         */
+        LongKey(PluginData owner, String name, int slot) {
+            super(owner, name, slot);
+        }
+    }
+
+    /**
+     * Key for a double value stored as a primitive
+     */
+    public static final class DoubleKey extends SlotKey {
+
+        /**
+         * Constructor
+         *
+         * @param owner plugin data the key is registered with
+         * @param name  name of the key
+         * @param slot  slot index of the key
+         */
+        DoubleKey(PluginData owner, String name, int slot) {
+            super(owner, name, slot);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.sucy.minigame.plugin;
+
+import com.sucy.minigame.arena.Arena;
+import com.sucy.minigame.arena.ArenaPlayer;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+/**
+ * <p>Finds the best arena of a plugin for a player to join</p>
+ * <p>Arenas that accept players are kept sorted by how many open slots
+ * they have left, so the arena closest to being full is always first.
+ * This fills lobbies up one at a time, letting games start sooner instead
+ * of spreading players over many half-empty lobbies. Ties go to the arena
+ * with the most players.</p>
+ * <p>Arenas notify the matchmaker whenever players join or leave or their
+ * state changes, which moves only that arena within the order, so finding
+ * the best arena never has to check all of them.</p>
+ * <p>Arenas of lazily loaded plugin data that weren't used yet are
+ * included as empty lobbies and loaded when a player is sent to them.</p>
+ */
+public final class Matchmaker {
+
+    private final TreeSet<Entry> joinable = new TreeSet<Entry>();
+    private final HashMap<Arena, Entry> entries = new HashMap<Arena, Entry>();
+
+    /**
+     * <p>Updates the position of an arena after it changed</p>
+     * <p>Arenas do this themselves when players join or leave or their
+     * state changes, so you should not need to call this yourself unless
+     * your states change whether players can join some other way.</p>
+     *
+     * @param arena arena that changed
+     */
+    public void update(Arena arena) {
+        Entry old = entries.remove(arena);
+        if (old != null) {
+            joinable.remove(old);
+        }
+
+        // Unused arenas aren't loaded to check if they are ready
+        int players = arena.getPlayers().size();
+        int open = arena.getMaxPlayers() - players;
+        if (open > 0 && (!arena.isLoaded() || (arena.canPlayersJoin() && arena.canStartGame()))) {
+            Entry entry = new Entry(arena, open, players);
+            joinable.add(entry);
+            entries.put(arena, entry);
+        }
+    }
+
+    /**
+     * Removes an arena from matchmaking
+     *
+     * @param arena arena to remove
+     */
+    public void remove(Arena arena) {
+        Entry entry = entries.remove(arena);
+        if (entry != null) {
+            joinable.remove(entry);
+        }
+    }
+
+    /**
+     * Removes every arena from matchmaking
+     */
+    public void clear() {
+        joinable.clear();
+        entries.clear();
+    }
+
+    /**
+     * @return number of arenas currently accepting players
+     */
+    public int getJoinableCount() {
+        return joinable.size();
+    }
+
+    /**
+     * @return the arena closest to being full that accepts players or null if there are none
+     */
+    public Arena getBestArena() {
+        return joinable.isEmpty() ? null : joinable.first().arena;
+    }
+
+    /**
+     * <p>Adds a player to the arena closest to being full that accepts them</p>
+     * <p>If joining an arena fails, for example because the join event was
+     * cancelled, the next arena in line is tried.</p>
+     *
+     * @param player player to add
+     * @return       the arena data for the player or null if no arena took the player
+     */
+    public ArenaPlayer join(Player player) {
+        HashSet<Arena> tried = new HashSet<Arena>();
+        Entry entry = joinable.isEmpty() ? null : joinable.first();
+        while (entry != null) {
+            Arena arena = entry.arena;
+            if (tried.add(arena)) {
+                ArenaPlayer arenaPlayer = arena.addPlayer(player);
+                if (arenaPlayer != null) {
+                    return arenaPlayer;
+                }
+
+                // Joining may have loaded the arena or shown it isn't ready
+                update(arena);
+            }
+            entry = joinable.higher(entry);
+        }
+        return null;
+    }
+
+    /**
+     * Position of an arena in the matchmaking order
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        private final Arena arena;
+        private final String key;
+        private final int open;
+        private final int players;
+
+        private Entry(Arena arena, int open, int players) {
+            this.arena = arena;
+            this.key = arena.getName().toLowerCase();
+            this.open = open;
+            this.players = players;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (open != other.open) {
+                return open < other.open ? -1 : 1;
+            }
+            if (players != other.players) {
+                return players > other.players ? -1 : 1;
+            }
+            return key.compareTo(other.key);
+        }
+    }
+}
@@ -2,14 +2,27 @@ package com.sucy.minigame.plugin;
 
 import com.sucy.minigame.MinigameAPI;
 import com.sucy.minigame.arena.Arena;
-import com.sucy.minigame.util.Config;
+import com.sucy.minigame.arena.ArenaDescriptor;
+import com.sucy.minigame.arena.ArenaLobby;
+import com.sucy.minigame.arena.ArenaPlayer;
+import com.sucy.minigame.arena.ArenaState;
+import com.sucy.minigame.arena.StateFactory;
 import org.bukkit.Location;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 
 /**
  * A wrapper for plugins to provide extra data and configuration helper methods
@@ -17,20 +30,81 @@ import java.util.HashMap;
 public final class PluginData {
 
     private final HashMap<String, Arena> arenas = new HashMap<String, Arena>();
+    private final HashMap<UUID, ArenaPlayer> players = new HashMap<UUID, ArenaPlayer>();
+    private final HashMap<String, StateFactory> stateFactories = new HashMap<String, StateFactory>();
+    private final HashMap<String, Object> dataKeys = new HashMap<String, Object>();
+    private final Matchmaker matchmaker = new Matchmaker();
 
     private final MinigameAPI api;
     private final JavaPlugin plugin;
-    private final Config config;
+    private final ArenaStorage storage;
+    private final boolean lazy;
+
+    private Future<?> lastSave;
+    private boolean dirty;
+
+    // Number of slots taken by each kind of data key
+    private int objectSlots;
+    private int intSlots;
+    private int longSlots;
+    private int doubleSlots;
 
     /**
-     * Creates a wrapper for a plugin with needed data
+     * Creates a wrapper for a plugin with needed data, storing
+     * the arenas in a single file
      *
+     * @param api     API reference
      * @param plugin  plugin reference
      */
     public PluginData(MinigameAPI api, JavaPlugin plugin) {
+        this(api, plugin, StorageType.SINGLE_FILE);
+    }
+
+    /**
+     * Creates a wrapper for a plugin with needed data
+     *
+     * @param api     API reference
+     * @param plugin  plugin reference
+     * @param type    layout to store the arenas in
+     */
+    public PluginData(MinigameAPI api, JavaPlugin plugin, StorageType type) {
+        this(api, plugin, type, false);
+    }
+
+    /**
+     * <p>Creates a wrapper for a plugin with needed data</p>
+     * <p>When loading lazily, only the names and join signs of the arenas
+     * are read while loading the data. Each arena then loads its states
+     * and teams the first time it is used, so loading doesn't depend on
+     * how many arenas there are.</p>
+     *
+     * @param api     API reference
+     * @param plugin  plugin reference
+     * @param type    layout to store the arenas in
+     * @param lazy    whether or not to load arenas on first use
+     */
+    public PluginData(MinigameAPI api, JavaPlugin plugin, StorageType type, boolean lazy) {
         this.api = api;
         this.plugin = plugin;
-        this.config = new Config(plugin, "arena-data");
+        this.lazy = lazy;
+
+        registerStateFactory(ArenaLobby.class, new StateFactory() {
+            @Override
+            public ArenaState create(Arena arena, String name) {
+                return new ArenaLobby(arena, name);
+            }
+        });
+
+        switch (type) {
+            case SHARDED:
+                storage = new ShardedStorage(plugin, api.getIOExecutor());
+                break;
+            case BINARY:
+                storage = new BinaryStorage(plugin, api.getIOExecutor());
+                break;
+            default:
+                storage = new SingleFileStorage(plugin, api.getIOExecutor());
+        }
     }
 
     /**
@@ -48,45 +122,269 @@ public final class PluginData {
     }
 
     /**
+     * @return true if arenas are loaded on first use, false otherwise
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * <p>Retrieves all registered arenas for this plugin</p>
+     * <p>If the data is loaded lazily, arenas that weren't used yet are
+     * included without being loaded.</p>
+     *
      * @return collection of all registered arenas for this plugin
      */
     public Collection<Arena> getArenas() {
         return arenas.values();
     }
 
+    /**
+     * <p>Registers the factory used to create states of the given class
+     * while loading arenas</p>
+     * <p>States of classes without a factory are created through their
+     * (Arena, String) constructor, which is looked up once per class.</p>
+     *
+     * @param type    class of the state
+     * @param factory factory creating states of the class
+     */
+    public void registerStateFactory(Class<? extends ArenaState> type, StateFactory factory) {
+        stateFactories.put(type.getName(), factory);
+    }
+
+    /**
+     * <p>Creates a state of an arena while loading it from the config</p>
+     * <p>This is used by arenas while loading, so you should not need
+     * to call this yourself.</p>
+     *
+     * @param arena     arena the state belongs to
+     * @param className name of the state's class
+     * @param name      name of the state
+     * @return          loaded state
+     * @throws Exception if the class couldn't be found or the state couldn't be created
+     */
+    public ArenaState createState(Arena arena, String className, String name) throws Exception {
+        StateFactory factory = stateFactories.get(className);
+        if (factory == null) {
+            factory = constructorFactory(className);
+            stateFactories.put(className, factory);
+        }
+        return factory.create(arena, name);
+    }
+
+    /**
+     * Creates a factory calling the (Arena, String) constructor of a state class
+     *
+     * @param className name of the state's class
+     * @return          factory for the class
+     * @throws Exception if the class or constructor couldn't be found
+     */
+    private StateFactory constructorFactory(String className) throws Exception {
+        Class<? extends ArenaState> type = Class.forName(className, true, plugin.getClass().getClassLoader())
+                .asSubclass(ArenaState.class);
+        final MethodHandle handle = MethodHandles.lookup()
+                .unreflectConstructor(type.getDeclaredConstructor(Arena.class, String.class))
+                .asType(MethodType.methodType(ArenaState.class, Arena.class, String.class));
+
+        return new StateFactory() {
+            @Override
+            public ArenaState create(Arena arena, String name) throws Exception {
+                try {
+                    return (ArenaState)handle.invokeExact(arena, name);
+                }
+                catch (Exception ex) {
+                    throw ex;
+                }
+                catch (Error error) {
+                    throw error;
+                }
+                catch (Throwable throwable) {
+                    throw new InvocationTargetException(throwable);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return matchmaker choosing the best arena for players to join
+     */
+    public Matchmaker getMatchmaker() {
+        return matchmaker;
+    }
+
+    /**
+     * <p>Adds a player to the arena of this plugin closest to being full
+     * that accepts them</p>
+     * <p>Players already in an arena of any plugin aren't moved.</p>
+     *
+     * @param player player to add
+     * @return       the arena data for the player or null if no arena took the player
+     */
+    public ArenaPlayer joinBestArena(Player player) {
+        if (api.getArenaPlayer(player) != null) {
+            return null;
+        }
+        return matchmaker.join(player);
+    }
+
+    /**
+     * <p>Registers a key for custom data of players in this plugin's arenas</p>
+     * <p>Registering a name again with the same type returns the key
+     * that was registered first.</p>
+     *
+     * @param name name of the key
+     * @param type type of the data
+     * @param <T>  type of the data
+     * @return     registered key
+     * @throws IllegalArgumentException if the name is already registered for another type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> DataKey<T> registerKey(String name, Class<T> type) {
+        Object key = getKey(name, DataKey.class);
+        if (key != null) {
+            if (((DataKey)key).getType() != type) {
+                throw new IllegalArgumentException("Data key " + name + " is already registered for another type");
+            }
+            return (DataKey<T>)key;
+        }
+
+        DataKey<T> created = new DataKey<T>(this, name, type, objectSlots++);
+        dataKeys.put(name.toLowerCase(), created);
+        return created;
+    }
+
+    /**
+     * Registers a key for an int value of players in this plugin's arenas
+     *
+     * @param name name of the key
+     * @return     registered key
+     * @throws IllegalArgumentException if the name is already registered for another type
+     */
+    public DataKey.IntKey registerIntKey(String name) {
+        Object key = getKey(name, DataKey.IntKey.class);
+        if (key == null) {
+            key = new DataKey.IntKey(this, name, intSlots++);
+            dataKeys.put(name.toLowerCase(), key);
+        }
+        return (DataKey.IntKey)key;
+    }
+
+    /**
+     * Registers a key for a long value of players in this plugin's arenas
+     *
+     * @param name name of the key
+     * @return     registered key
+     * @throws IllegalArgumentException if the name is already registered for another type
+     */
+    public DataKey.LongKey registerLongKey(String name) {
+        Object key = getKey(name, DataKey.LongKey.class);
+        if (key == null) {
+            key = new DataKey.LongKey(this, name, longSlots++);
+            dataKeys.put(name.toLowerCase(), key);
+        }
+        return (DataKey.LongKey)key;
+    }
+
+    /**
+     * Registers a key for a double value of players in this plugin's arenas
+     *
+     * @param name name of the key
+     * @return     registered key
+     * @throws IllegalArgumentException if the name is already registered for another type
+     */
+    public DataKey.DoubleKey registerDoubleKey(String name) {
+        Object key = getKey(name, DataKey.DoubleKey.class);
+        if (key == null) {
+            key = new DataKey.DoubleKey(this, name, doubleSlots++);
+            dataKeys.put(name.toLowerCase(), key);
+        }
+        return (DataKey.DoubleKey)key;
+    }
+
+    /**
+     * Retrieves a registered data key, making sure it is of the expected kind
+     *
+     * @param name name of the key
+     * @param kind expected class of the key
+     * @return     registered key or null if not registered
+     * @throws IllegalArgumentException if the key is of another kind
+     */
+    private Object getKey(String name, Class<?> kind) {
+        Object key = dataKeys.get(name.toLowerCase());
+        if (key != null && key.getClass() != kind) {
+            throw new IllegalArgumentException("Data key " + name + " is already registered for another type");
+        }
+        return key;
+    }
+
     /**
      * Deletes all plugin data
      */
     public void deleteData() {
-        config.getConfig().set("", null);
-        config.saveConfig();
+        lastSave = storage.clear();
     }
 
     /**
-     * @return config file for the plugin arena data
+     * @return storage backend holding the arena data
      */
+    public ArenaStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return config file for the plugin arena data or null if arenas are not stored in a single file
+     * @deprecated arenas may be stored in separate files, use getArenaConfig(String) instead
+     */
+    @Deprecated
     public ConfigurationSection getConfig() {
-        return config.getConfig();
+        return storage instanceof SingleFileStorage ? ((SingleFileStorage)storage).getConfig() : null;
+    }
+
+    /**
+     * Retrieves the configuration section holding an arena's data
+     *
+     * @param name arena name
+     * @return     configuration section of the arena
+     */
+    public ConfigurationSection getArenaConfig(String name) {
+        return storage.getSection(name);
     }
 
     /**
      * Loads the plugin data
      */
     public void loadData() {
-        for (String key : config.getConfig().getKeys(false)) {
-            Arena arena = new Arena(this, key);
-            arenas.put(key.toLowerCase(), arena);
+        Collection<String> keys = storage.load(api.getLoadExecutor());
+
+        // Only index the arenas, loading the rest on first use
+        if (lazy) {
+            for (String key : keys) {
+                arenas.put(key.toLowerCase(), new Arena(this, key, storage.getSection(key)));
+            }
+            return;
+        }
+
+        // The storage already parsed the files in parallel and reading the
+        // descriptors from the parsed data is cheap, so build the arenas here
+        for (String key : keys) {
+            Arena arena = new Arena(this, ArenaDescriptor.parse(key, storage.getSection(key)));
+            arenas.put(arena.getName().toLowerCase(), arena);
         }
     }
 
     /**
-     * Retrieves an arena by name
+     * <p>Retrieves an arena by name</p>
+     * <p>If the data is loaded lazily, this loads the arena.</p>
      *
      * @param name arena name
      * @return     arena or null if not found
      */
     public Arena getArena(String name) {
-        return arenas.get(name.toLowerCase());
+        Arena arena = arenas.get(name.toLowerCase());
+        if (arena != null) {
+            arena.ensureLoaded();
+        }
+        return arena;
     }
 
     /**
@@ -96,12 +394,44 @@ public final class PluginData {
      * @return       arena the player is in
      */
     public Arena getArena(Player player) {
-        for (Arena arena : arenas.values()) {
-            if (arena.getPlayer(player.getName()) != null) {
-                return arena;
-            }
+        ArenaPlayer arenaPlayer = players.get(player.getUniqueId());
+        return arenaPlayer == null ? null : arenaPlayer.getArena();
+    }
+
+    /**
+     * Retrieves the arena data of a player in one of this plugin's arenas
+     *
+     * @param player player to search for
+     * @return       arena data for the player or null if not in an arena
+     */
+    public ArenaPlayer getArenaPlayer(Player player) {
+        return players.get(player.getUniqueId());
+    }
+
+    /**
+     * <p>Registers a player as being in one of this plugin's arenas</p>
+     * <p>This is handled automatically when players join an arena,
+     * so you should not call this yourself.</p>
+     *
+     * @param player player that joined an arena
+     */
+    public void registerPlayer(ArenaPlayer player) {
+        players.put(player.getPlayerId(), player);
+        api.registerPlayer(player);
+    }
+
+    /**
+     * <p>Unregisters a player from this plugin's arenas</p>
+     * <p>This is handled automatically when players leave an arena,
+     * so you should not call this yourself.</p>
+     *
+     * @param player player that left an arena
+     */
+    public void unregisterPlayer(ArenaPlayer player) {
+        if (players.get(player.getPlayerId()) == player) {
+            players.remove(player.getPlayerId());
         }
-        return null;
+        api.unregisterPlayer(player);
     }
 
     /**
@@ -111,12 +441,8 @@ public final class PluginData {
      * @return        arena with the join sign or null if not found
      */
     public Arena getArena(Location signLoc) {
-        for (Arena arena : arenas.values()) {
-            if (arena.getSignLoc() != null && arena.getSignLoc().equals(signLoc)) {
-                return arena;
-            }
-        }
-        return null;
+        Arena arena = api.getSignIndex().get(signLoc);
+        return arena != null && arena.getPluginData() == this ? arena : null;
     }
 
     /**
@@ -162,7 +488,9 @@ public final class PluginData {
     }
 
     /**
-     * Unregisters an arena
+     * <p>Unregisters an arena</p>
+     * <p>Any game in progress in the arena is ended and its players
+     * are removed first.</p>
      *
      * @param name arena name
      * @return     Arena that was removed or null if not found
@@ -172,21 +500,123 @@ public final class PluginData {
         // Unregister it
         Arena arena = arenas.remove(name.toLowerCase());
 
-        // Remove it from config if present
+        // Shut it down and remove it from the indexes and storage if present
         if (arena != null) {
-            config.getConfig().set(arena.getName(), null);
+            if (arena.isLoaded()) {
+                arena.getQueue().clear();
+                arena.endGame();
+                arena.removeAllPlayers();
+            }
+            release(arena);
+            storage.remove(arena.getName());
+            dirty = true;
         }
 
         return arena;
     }
 
     /**
-     * Saves the plugin data
+     * Removes all arenas of the plugin from the API's lookup indexes
+     * and stops their timers. This is done automatically when the
+     * plugin data is cleared.
+     */
+    public void unload() {
+        for (Arena arena : arenas.values()) {
+            release(arena);
+        }
+        for (ArenaPlayer player : players.values()) {
+            api.unregisterPlayer(player);
+        }
+    }
+
+    /**
+     * <p>Saves the plugin data</p>
+     * <p>Only arenas that changed since they were last saved write their
+     * data to the config, and the file is only written if anything changed
+     * at all. The arenas write their data right away, but the file itself
+     * is written in the background. Use awaitSave() if you need to wait
+     * until it is on disk.</p>
      */
     public void save() {
+        ArrayList<String> changed = new ArrayList<String>();
         for (Arena arena : arenas.values()) {
-            arena.save();
+            if (arena.isDirty()) {
+                arena.save();
+                changed.add(arena.getName());
+            }
+        }
+
+        if (dirty || !changed.isEmpty()) {
+            Future<?> save = storage.save(changed);
+            if (save != null) {
+                lastSave = save;
+            }
+            dirty = false;
+        }
+    }
+
+    /**
+     * <p>Reloads a single arena from disk, discarding its unsaved changes</p>
+     * <p>Any game in progress in the arena is ended and its players are
+     * removed first. This is only supported when arenas are stored in
+     * separate files.</p>
+     *
+     * @param name arena name
+     * @return     reloaded arena or null if not found or not supported
+     */
+    public Arena reloadArena(String name) {
+        Arena arena = arenas.get(name.toLowerCase());
+        if (arena == null || !storage.reload(arena.getName())) {
+            return null;
+        }
+
+        // Shut down the old instance
+        arena.getQueue().clear();
+        arena.endGame();
+        arena.removeAllPlayers();
+        release(arena);
+
+        // Load the new one
+        Arena reloaded = lazy
+                ? new Arena(this, arena.getName(), storage.getSection(arena.getName()))
+                : new Arena(this, arena.getName());
+        arenas.put(name.toLowerCase(), reloaded);
+        return reloaded;
+    }
+
+    /**
+     * Removes an arena from the API's lookup indexes, stops its timer
+     * and releases the chunks it holds
+     *
+     * @param arena arena to release
+     */
+    private void release(Arena arena) {
+        api.getSignUpdater().cancel(arena);
+        api.getSignIndex().unregister(arena, arena.getStoredSignLoc());
+        api.getChunkWarmer().release(arena);
+        matchmaker.remove(arena);
+        arena.getQueue().clear();
+        if (arena.isLoaded()) {
+            arena.getCurrentState().pause();
+        }
+    }
+
+    /**
+     * Waits until the last save of the plugin data has been written
+     */
+    public void awaitSave() {
+        if (lastSave == null) {
+            return;
+        }
+
+        try {
+            lastSave.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ex) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to save arena data", ex.getCause());
         }
-        config.saveConfig();
     }
 }
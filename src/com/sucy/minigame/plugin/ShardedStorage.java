@@ -0,0 +1,280 @@
+package com.sucy.minigame.plugin;
+
+import com.sucy.minigame.util.Config;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+
+/**
+ * <p>Stores each arena of a plugin in its own file inside an arenas folder</p>
+ * <p>Arenas are loaded, saved and reloaded independently, so changing one
+ * arena never rewrites or re-parses the data of the others.</p>
+ */
+public class ShardedStorage implements ArenaStorage {
+
+    private static final String FOLDER = "arenas";
+
+    private final HashMap<String, Config> shards = new HashMap<String, Config>();
+    private final HashSet<String> usedFiles = new HashSet<String>();
+
+    private final JavaPlugin plugin;
+    private final ExecutorService executor;
+    private final File folder;
+
+    /**
+     * Constructor
+     *
+     * @param plugin   plugin owning the data
+     * @param executor executor to write files with
+     */
+    public ShardedStorage(JavaPlugin plugin, ExecutorService executor) {
+        this.plugin = plugin;
+        this.executor = executor;
+        this.folder = new File(plugin.getDataFolder(), FOLDER);
+    }
+
+    /**
+     * <p>Loads the file of every stored arena</p>
+     * <p>The files don't share anything, so each one is parsed
+     * on the workers.</p>
+     *
+     * @param workers executor to parse the files on
+     * @return        names of all stored arenas
+     */
+    @Override
+    public Collection<String> load(ExecutorService workers) {
+        ArrayList<String> names = new ArrayList<String>();
+        File[] files = folder.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".yml");
+            }
+        });
+        if (files == null) {
+            return names;
+        }
+
+        // Parse the files on the workers
+        ArrayList<Future<Config>> loading = new ArrayList<Future<Config>>(files.length);
+        String[] fileNames = new String[files.length];
+        for (int i = 0; i < files.length; i++) {
+            final String fileName = files[i].getName().substring(0, files[i].getName().length() - 4);
+            fileNames[i] = fileName;
+            usedFiles.add(fileName);
+            loading.add(submit(workers, new Callable<Config>() {
+                @Override
+                public Config call() {
+                    Config shard = new Config(plugin, FOLDER + "/" + fileName);
+                    shard.getConfig();
+                    return shard;
+                }
+            }));
+        }
+
+        // Collect them in order
+        for (int i = 0; i < files.length; i++) {
+            try {
+                Config shard = loading.get(i).get();
+                String name = shard.getConfig().getString(ConfigValues.NAME, fileNames[i]);
+                shards.put(name.toLowerCase(), shard);
+                names.add(name);
+            }
+            catch (ExecutionException ex) {
+                plugin.getLogger().log(Level.SEVERE, "Could not load arena data from " + files[i], ex.getCause());
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                plugin.getLogger().log(Level.SEVERE, "Interrupted while loading arena data", ex);
+                break;
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Retrieves the root section of an arena's file, creating the file if needed
+     *
+     * @param arena arena name
+     * @return      configuration section of the arena
+     */
+    @Override
+    public ConfigurationSection getSection(String arena) {
+        return getShard(arena).getConfig();
+    }
+
+    /**
+     * Removes the file of an arena
+     *
+     * @param arena arena name
+     */
+    @Override
+    public void remove(String arena) {
+        Config shard = shards.remove(arena.toLowerCase());
+        if (shard != null) {
+            usedFiles.remove(shard.getFile().substring(FOLDER.length() + 1));
+            delete(new File(plugin.getDataFolder(), shard.getFile() + ".yml"));
+        }
+    }
+
+    /**
+     * Writes the files of the changed arenas
+     *
+     * @param arenas names of the arenas that changed
+     * @return       future completing once all files are written or null if none were
+     */
+    @Override
+    public Future<?> save(Collection<String> arenas) {
+
+        // Files are written in order, so the last one finishes after the others
+        Future<?> last = null;
+        for (String arena : arenas) {
+            last = getShard(arena).saveConfigAsync(executor);
+        }
+        return last;
+    }
+
+    /**
+     * Deletes the files of all arenas
+     *
+     * @return future completing once the files are deleted
+     */
+    @Override
+    public Future<?> clear() {
+        shards.clear();
+        usedFiles.clear();
+        File[] files = folder.listFiles();
+        Future<?> last = null;
+        if (files != null) {
+            for (File file : files) {
+                last = delete(file);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Reloads the file of a single arena
+     *
+     * @param arena arena name
+     * @return      true if reloaded, false if the arena has no file
+     */
+    @Override
+    public boolean reload(String arena) {
+        Config shard = shards.get(arena.toLowerCase());
+        if (shard == null) {
+            return false;
+        }
+        shard.reloadConfig();
+        return true;
+    }
+
+    /**
+     * Retrieves the file of an arena, creating it if needed
+     *
+     * @param arena arena name
+     * @return      config file of the arena
+     */
+    private Config getShard(String arena) {
+        Config shard = shards.get(arena.toLowerCase());
+        if (shard == null) {
+
+            // Files from before names were escaped may already use the name
+            String base = fileName(arena);
+            String fileName = base;
+            for (int i = 2; usedFiles.contains(fileName); i++) {
+                fileName = base + "." + i;
+            }
+
+            shard = new Config(plugin, FOLDER + "/" + fileName);
+            shards.put(arena.toLowerCase(), shard);
+            usedFiles.add(fileName);
+        }
+        return shard;
+    }
+
+    /**
+     * Runs a task on the workers, or right away if they no longer accept tasks
+     *
+     * @param workers executor to run the task on
+     * @param task    task to run
+     * @return        future of the task's result
+     */
+    private static <T> Future<T> submit(ExecutorService workers, Callable<T> task) {
+        try {
+            return workers.submit(task);
+        }
+        catch (RejectedExecutionException ex) {
+            FutureTask<T> now = new FutureTask<T>(task);
+            now.run();
+            return now;
+        }
+    }
+
+    /**
+     * Deletes a file after any pending writes
+     *
+     * @param file file to delete
+     * @return     future completing once the file is deleted
+     */
+    private Future<?> delete(final File file) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                if (file.exists() && !file.delete()) {
+                    plugin.getLogger().severe("Could not delete " + file);
+                }
+            }
+        };
+
+        try {
+            return executor.submit(task);
+        }
+        catch (RejectedExecutionException ex) {
+            FutureTask<Object> now = new FutureTask<Object>(task, null);
+            now.run();
+            return now;
+        }
+    }
+
+    /**
+     * <p>Converts an arena name into a safe file name</p>
+     * <p>Lowercase letters, digits and dashes are kept and every other
+     * character is escaped as an underscore followed by its four digit hex
+     * code, so different names never share a file.</p>
+     *
+     * @param arena arena name
+     * @return      file name without the extension
+     */
+    private static String fileName(String arena) {
+        String lower = arena.toLowerCase();
+        StringBuilder builder = new StringBuilder(lower.length());
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-') {
+                builder.append(c);
+            }
+            else {
+                String hex = Integer.toHexString(c);
+                builder.append('_');
+                for (int j = hex.length(); j < 4; j++) {
+                    builder.append('0');
+                }
+                builder.append(hex);
+            }
+        }
+        return builder.toString();
+    }
+}
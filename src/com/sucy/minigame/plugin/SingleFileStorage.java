@@ -0,0 +1,115 @@
+package com.sucy.minigame.plugin;
+
+import com.sucy.minigame.util.Config;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Stores all arenas of a plugin in a single arena-data.yml file
+ */
+public class SingleFileStorage implements ArenaStorage {
+
+    private final Config config;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor
+     *
+     * @param plugin   plugin owning the data
+     * @param executor executor to write files with
+     */
+    public SingleFileStorage(JavaPlugin plugin, ExecutorService executor) {
+        this.config = new Config(plugin, "arena-data");
+        this.executor = executor;
+    }
+
+    /**
+     * @return config holding the data of every arena
+     */
+    public ConfigurationSection getConfig() {
+        return config.getConfig();
+    }
+
+    /**
+     * <p>Loads the stored data</p>
+     * <p>The file can only be parsed as a whole, so this doesn't use
+     * the workers.</p>
+     *
+     * @param workers executor to parse the data on
+     * @return        names of all stored arenas
+     */
+    @Override
+    public Collection<String> load(ExecutorService workers) {
+        return new ArrayList<String>(config.getConfig().getKeys(false));
+    }
+
+    /**
+     * Retrieves the configuration section of an arena, creating it if needed
+     *
+     * @param arena arena name
+     * @return      configuration section of the arena
+     */
+    @Override
+    public ConfigurationSection getSection(String arena) {
+
+        // Section exists
+        if (config.getConfig().contains(arena)) {
+            return config.getConfig().getConfigurationSection(arena);
+        }
+
+        // Section doesn't exist
+        else {
+            return config.getConfig().createSection(arena);
+        }
+    }
+
+    /**
+     * Removes the data of an arena
+     *
+     * @param arena arena name
+     */
+    @Override
+    public void remove(String arena) {
+        config.getConfig().set(arena, null);
+    }
+
+    /**
+     * Writes the whole file as the arenas share it
+     *
+     * @param arenas names of the arenas that changed
+     * @return       future completing once the data is written
+     */
+    @Override
+    public Future<?> save(Collection<String> arenas) {
+        return config.saveConfigAsync(executor);
+    }
+
+    /**
+     * Deletes all stored data
+     *
+     * @return future completing once the data is deleted
+     */
+    @Override
+    public Future<?> clear() {
+        for (String key : config.getConfig().getKeys(false)) {
+            config.getConfig().set(key, null);
+        }
+        return config.saveConfigAsync(executor);
+    }
+
+    /**
+     * Single arenas can't be reloaded without the others
+     *
+     * @param arena arena name
+     * @return      false
+     */
+    @Override
+    public boolean reload(String arena) {
+        return false;
+    }
+}
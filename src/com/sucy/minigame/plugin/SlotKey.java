@@ -0,0 +1,61 @@
+package com.sucy.minigame.plugin;
+
+/**
+ * <p>Base of the keys for custom data attached to players in an arena</p>
+ * <p>Holds the plugin the key is registered with, its name and the slot
+ * it maps to in the arrays on each player.</p>
+ */
+abstract class SlotKey {
+
+    private final PluginData owner;
+    private final String name;
+    private final int slot;
+
+    /**
+     * Constructor
+     *
+     * @param owner plugin data the key is registered with
+     * @param name  name of the key
+     * @param slot  slot index of the key
+     */
+    SlotKey(PluginData owner, String name, int slot) {
+        this.owner = owner;
+        this.name = name;
+        this.slot = slot;
+    }
+
+    /**
+     * @return plugin data the key is registered with
+     */
+    public PluginData getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return name of the key
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return slot index of the key
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * <p>Makes sure the key belongs to the plugin owning an arena</p>
+     * <p>This is done by the players of the arena whenever the key is
+     * used, so you should not need to call this yourself.</p>
+     *
+     * @param data plugin data owning the arena
+     * @throws IllegalArgumentException if the key belongs to another plugin
+     */
+    public void checkOwner(PluginData data) {
+        if (owner != data) {
+            throw new IllegalArgumentException("Data key " + name + " is registered with another plugin");
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.sucy.minigame.plugin;
+
+/**
+ * Layouts the arena data of a plugin can be stored in
+ */
+public enum StorageType {
+
+    /**
+     * All arenas in a single arena-data.yml file
+     */
+    SINGLE_FILE,
+
+    /**
+     * One file per arena inside an arenas folder, allowing arenas
+     * to be saved and reloaded independently of each other
+     */
+    SHARDED,
+
+    /**
+     * All arenas in a single compact arena-data.dat file, which loads
+     * much faster than YAML and can be converted to and from it
+     */
+    BINARY
+}
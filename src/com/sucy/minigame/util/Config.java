@@ -1,12 +1,27 @@
 package com.sucy.minigame.util;
 
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 
 /**
@@ -14,6 +29,9 @@ import java.util.logging.Level;
  *
  * Slightly modified version of the one from the bukkit tutorial
  * Source: http://wiki.bukkit.org/Configuration_API_Reference
+ *
+ * Files are always written to a temporary file first and then moved
+ * over the old one so a crash mid-write can't leave a truncated file.
  */
 public class Config {
 
@@ -78,13 +96,132 @@ public class Config {
     public void saveConfig() {
         if (fileConfiguration != null || configFile != null) {
             try {
-                getConfig().save(configFile);
+                write(getConfig().saveToString());
             } catch (IOException ex) {
                 plugin.getLogger().log(Level.SEVERE, "Could not save config to " + configFile, ex);
             }
         }
     }
 
+    /**
+     * <p>Saves the config in the background</p>
+     * <p>A copy of the current values is taken right away on the calling
+     * thread, so the config can be modified again as soon as this returns.
+     * Turning the copy into YAML and writing it happens on the executor.
+     * If the executor no longer accepts tasks, the copy is saved on the
+     * calling thread instead.</p>
+     *
+     * @param executor executor to save with, should run tasks in order
+     * @return         future completing once the file is written
+     */
+    public Future<?> saveConfigAsync(ExecutorService executor) {
+        final Map<String, Object> snapshot = snapshot(getConfig());
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                YamlConfiguration yaml = new YamlConfiguration();
+                for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+                    if (entry.getValue() instanceof Map) {
+                        yaml.createSection(entry.getKey(), (Map<?, ?>)entry.getValue());
+                    }
+                    else yaml.set(entry.getKey(), entry.getValue());
+                }
+
+                try {
+                    write(yaml.saveToString());
+                } catch (IOException ex) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not save config to " + configFile, ex);
+                }
+            }
+        };
+
+        try {
+            return executor.submit(task);
+        }
+        catch (RejectedExecutionException ex) {
+            FutureTask<Object> now = new FutureTask<Object>(task, null);
+            now.run();
+            return now;
+        }
+    }
+
+    /**
+     * Writes data to a temporary file and moves it over the config file
+     *
+     * @param data data to write
+     * @throws IOException when the file couldn't be written
+     */
+    private void write(String data) throws IOException {
+        replaceFile(configFile, data.getBytes("UTF-8"));
+    }
+
+    /**
+     * Writes data to a temporary file and moves it over the target file
+     *
+     * @param file file to replace
+     * @param data data to write
+     * @throws IOException when the file couldn't be written
+     */
+    public static void replaceFile(File file, byte[] data) throws IOException {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create folder " + folder);
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        OutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(data);
+        }
+        finally {
+            out.close();
+        }
+
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * <p>Copies the values of a section into immutable maps and lists</p>
+     * <p>Sub-sections become maps, so the copy can safely be read
+     * from another thread while the section keeps changing.</p>
+     *
+     * @param section section to copy
+     * @return        copy of the section's values
+     */
+    public static Map<String, Object> snapshot(ConfigurationSection section) {
+        LinkedHashMap<String, Object> copy = new LinkedHashMap<String, Object>();
+        for (String key : section.getKeys(false)) {
+            copy.put(key, snapshotValue(section.get(key)));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Copies a single config value
+     *
+     * @param value value to copy
+     * @return      copy of the value
+     */
+    private static Object snapshotValue(Object value) {
+        if (value instanceof ConfigurationSection) {
+            return snapshot((ConfigurationSection)value);
+        }
+        else if (value instanceof List) {
+            List<Object> copy = new ArrayList<Object>();
+            for (Object element : (List<?>)value) {
+                copy.add(snapshotValue(element));
+            }
+            return Collections.unmodifiableList(copy);
+        }
+        else return value;
+    }
+
     /**
      * Saves the default config if no file exists yet
      */
@@ -1,6 +1,5 @@
 package com.sucy.minigame.util;
 
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 
@@ -13,32 +12,27 @@ import java.util.List;
 public class DataParser {
 
     /**
-     * Parses a location from a string
+     * <p>Parses a location from a string</p>
+     * <p>The world is looked up right away, so the location has a null
+     * world if it isn't loaded. Use StoredLocation.parse(String) to keep
+     * the location until the world is available.</p>
      *
      * @param data data to parse
      * @return     location or null if invalid input
      */
     public static Location parseLocation(String data) {
-        String[] pieces = data.split(",");
-
-        // A location requires four arguments
-        if (pieces.length != 6)
-            return null;
-
-        // Try to parse a location from the data
-        try {
-            return new Location(Bukkit.getWorld(pieces[0]),
-                    Double.parseDouble(pieces[1]),
-                    Double.parseDouble(pieces[2]),
-                    Double.parseDouble(pieces[3]),
-                    Float.parseFloat(pieces[4]),
-                    Float.parseFloat(pieces[5]));
-        }
+        StoredLocation loc = StoredLocation.parse(data);
 
         // Return null if failed to parse
-        catch (Exception e) {
+        if (loc == null)
             return null;
-        }
+
+        return new Location(StoredLocation.getWorld(loc.getWorldName()),
+                loc.getX(),
+                loc.getY(),
+                loc.getZ(),
+                loc.getYaw(),
+                loc.getPitch());
     }
 
     /**
@@ -54,11 +48,6 @@ public class DataParser {
             return null;
 
         // Otherwise include all necessary data
-        return loc.getWorld().getName() + ","
-                + loc.getX() + ","
-                + loc.getY() + ","
-                + loc.getZ() + ","
-                + loc.getYaw() + ","
-                + loc.getPitch();
+        return StoredLocation.of(loc).serialize();
     }
 }
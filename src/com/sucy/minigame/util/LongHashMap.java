@@ -0,0 +1,201 @@
+package com.sucy.minigame.util;
+
+/**
+ * <p>A hash map keyed by primitive longs</p>
+ * <p>Uses open addressing with linear probing so that lookups
+ * never box the key or allocate any memory. Meant for hot paths
+ * such as block and chunk coordinate lookups.</p>
+ *
+ * @param <V> type of the stored values
+ */
+public class LongHashMap<V> {
+
+    private static final int   DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR      = 0.5f;
+
+    private long[]   keys;
+    private Object[] values;
+    private int      size;
+    private int      threshold;
+
+    /**
+     * Creates an empty map
+     */
+    public LongHashMap() {
+        keys = new long[DEFAULT_CAPACITY];
+        values = new Object[DEFAULT_CAPACITY];
+        threshold = (int)(DEFAULT_CAPACITY * LOAD_FACTOR);
+    }
+
+    /**
+     * @return number of entries in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the map has no entries, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Retrieves the value mapped to a key
+     *
+     * @param key key to look up
+     * @return    mapped value or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        Object value;
+        while ((value = values[index]) != null) {
+            if (keys[index] == key) {
+                return (V)value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether or not a key is mapped
+     *
+     * @param key key to check
+     * @return    true if mapped, false otherwise
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps a value to a key, replacing any previous value
+     *
+     * @param key   key to map
+     * @param value value to map, cannot be null
+     * @return      previous value or null if there wasn't one
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Invalid value - null");
+        }
+
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        Object previous;
+        while ((previous = values[index]) != null) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return (V)previous;
+            }
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        if (++size > threshold) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the mapping for a key
+     *
+     * @param key key to remove
+     * @return    removed value or null if it wasn't mapped
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        Object value;
+        while ((value = values[index]) != null) {
+            if (keys[index] == key) {
+                shiftBack(index);
+                size--;
+                return (V)value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Removes all entries from the map
+     */
+    public void clear() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Closes the gap left by a removed entry so probe chains stay intact
+     *
+     * @param gap index of the removed entry
+     */
+    private void shiftBack(int gap) {
+        int mask = keys.length - 1;
+        int index = gap;
+        while (true) {
+            index = (index + 1) & mask;
+            if (values[index] == null) {
+                break;
+            }
+
+            // Only move entries whose home slot doesn't lie between the gap and their position
+            int home = hash(keys[index]) & mask;
+            if (gap <= index ? (gap < home && home <= index) : (gap < home || home <= index)) {
+                continue;
+            }
+
+            keys[gap] = keys[index];
+            values[gap] = values[index];
+            gap = index;
+        }
+        values[gap] = null;
+    }
+
+    /**
+     * Grows the backing arrays and rehashes all entries
+     *
+     * @param capacity new capacity, must be a power of two
+     */
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+        threshold = (int)(capacity * LOAD_FACTOR);
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = hash(oldKeys[i]) & mask;
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of a key so packed coordinates don't cluster
+     *
+     * @param key key to hash
+     * @return    hash of the key
+     */
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int)(key ^ (key >>> 32));
+    }
+}
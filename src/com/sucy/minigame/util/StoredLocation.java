@@ -0,0 +1,292 @@
+package com.sucy.minigame.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.HashMap;
+
+/**
+ * <p>A location as it is stored in the config</p>
+ * <p>This only keeps the name of the world along with the coordinates,
+ * so it can be parsed before the world is loaded and off the main thread.
+ * The world is looked up the first time the location is used and the
+ * bound Location is kept until a world with that name loads or unloads.
+ * Locations in worlds that aren't loaded yet start working as soon as
+ * the world loads.</p>
+ * <p>Worlds are cached by name for all stored locations, so binding
+ * many locations in the same world only looks the world up once.</p>
+ */
+public final class StoredLocation {
+
+    private static final HashMap<String, World> WORLDS = new HashMap<String, World>();
+    private static final HashMap<String, Integer> WORLD_GENERATIONS = new HashMap<String, Integer>();
+    private static int generation;
+
+    private final String world;
+    private final double x;
+    private final double y;
+    private final double z;
+    private final float  yaw;
+    private final float  pitch;
+
+    private Location bound;
+    private int boundGeneration = -1;
+
+    /**
+     * Constructor
+     *
+     * @param world name of the world
+     * @param x     X coordinate
+     * @param y     Y coordinate
+     * @param z     Z coordinate
+     * @param yaw   yaw rotation
+     * @param pitch pitch rotation
+     */
+    public StoredLocation(String world, double x, double y, double z, float yaw, float pitch) {
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.yaw = yaw;
+        this.pitch = pitch;
+    }
+
+    /**
+     * Creates a stored location from a location
+     *
+     * @param loc location to store
+     * @return    stored location or null if the location or its world is null
+     */
+    public static StoredLocation of(Location loc) {
+        if (loc == null || loc.getWorld() == null) {
+            return null;
+        }
+        return new StoredLocation(loc.getWorld().getName(), loc.getX(), loc.getY(), loc.getZ(), loc.getYaw(), loc.getPitch());
+    }
+
+    /**
+     * <p>Parses a location from a string in the format
+     * "world,x,y,z,yaw,pitch"</p>
+     * <p>This doesn't touch the server, so it is safe to call from any thread.</p>
+     *
+     * @param data data to parse
+     * @return     stored location or null if invalid input
+     */
+    public static StoredLocation parse(String data) {
+        if (data == null) {
+            return null;
+        }
+
+        // Find the five separators
+        int[] commas = new int[5];
+        int index = -1;
+        for (int i = 0; i < commas.length; i++) {
+            index = data.indexOf(',', index + 1);
+            if (index < 0) {
+                return null;
+            }
+            commas[i] = index;
+        }
+        if (data.indexOf(',', index + 1) >= 0) {
+            return null;
+        }
+
+        // Try to parse the values between them
+        try {
+            return new StoredLocation(data.substring(0, commas[0]),
+                    Double.parseDouble(data.substring(commas[0] + 1, commas[1])),
+                    Double.parseDouble(data.substring(commas[1] + 1, commas[2])),
+                    Double.parseDouble(data.substring(commas[2] + 1, commas[3])),
+                    Float.parseFloat(data.substring(commas[3] + 1, commas[4])),
+                    Float.parseFloat(data.substring(commas[4] + 1)));
+        }
+
+        // Return null if failed to parse
+        catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * <p>Reads a location from a config value</p>
+     * <p>Storage that decodes locations itself puts them in the config
+     * as stored locations, which are used as they are. Anything else is
+     * parsed from its text.</p>
+     *
+     * @param value config value
+     * @return      stored location or null if invalid input
+     */
+    public static StoredLocation fromValue(Object value) {
+        if (value instanceof StoredLocation) {
+            return (StoredLocation)value;
+        }
+        return value instanceof String ? parse((String)value) : null;
+    }
+
+    /**
+     * Reads a location from a config
+     *
+     * @param config config to read from
+     * @param path   path of the location
+     * @return       stored location or null if missing or invalid
+     */
+    public static StoredLocation fromConfig(ConfigurationSection config, String path) {
+        return fromValue(config.get(path));
+    }
+
+    /**
+     * <p>Retrieves a loaded world by name, caching the result</p>
+     * <p>This must be called from the main thread.</p>
+     *
+     * @param name name of the world
+     * @return     world or null if not loaded
+     */
+    public static World getWorld(String name) {
+        World world = WORLDS.get(name);
+        if (world == null) {
+            world = Bukkit.getWorld(name);
+            if (world != null) {
+                WORLDS.put(name, world);
+            }
+        }
+        return world;
+    }
+
+    /**
+     * <p>Drops the cached world of the given name and every location
+     * bound to it</p>
+     * <p>This is done automatically when worlds load or unload, so you
+     * should not need to call this yourself.</p>
+     *
+     * @param name name of the world
+     */
+    public static void invalidate(String name) {
+        WORLDS.remove(name);
+        Integer worldGeneration = WORLD_GENERATIONS.get(name);
+        WORLD_GENERATIONS.put(name, worldGeneration == null ? 1 : worldGeneration + 1);
+        generation++;
+    }
+
+    /**
+     * <p>Retrieves the number of times a world loaded or unloaded</p>
+     * <p>This can be used to tell when Locations derived from stored
+     * locations need to be bound again.</p>
+     *
+     * @return current generation of the world cache
+     */
+    public static int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * <p>Retrieves the number of times the world of the given name
+     * loaded or unloaded</p>
+     * <p>This can be used to tell when anything learned about the blocks
+     * of that world may be out of date.</p>
+     *
+     * @param world name of the world
+     * @return      current generation of the world
+     */
+    public static int getGeneration(String world) {
+        Integer worldGeneration = WORLD_GENERATIONS.get(world);
+        return worldGeneration == null ? 0 : worldGeneration;
+    }
+
+    /**
+     * @return name of the world
+     */
+    public String getWorldName() {
+        return world;
+    }
+
+    /**
+     * @return X coordinate
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * @return Y coordinate
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return Z coordinate
+     */
+    public double getZ() {
+        return z;
+    }
+
+    /**
+     * @return yaw rotation
+     */
+    public float getYaw() {
+        return yaw;
+    }
+
+    /**
+     * @return pitch rotation
+     */
+    public float getPitch() {
+        return pitch;
+    }
+
+    /**
+     * @return X coordinate of the block
+     */
+    public int getBlockX() {
+        return (int)Math.floor(x);
+    }
+
+    /**
+     * @return Y coordinate of the block
+     */
+    public int getBlockY() {
+        return (int)Math.floor(y);
+    }
+
+    /**
+     * @return Z coordinate of the block
+     */
+    public int getBlockZ() {
+        return (int)Math.floor(z);
+    }
+
+    /**
+     * <p>Binds the location to its world</p>
+     * <p>The same Location is returned until a world with this name loads
+     * or unloads. This must be called from the main thread.</p>
+     *
+     * @return location or null if the world isn't loaded
+     */
+    public Location toLocation() {
+        if (boundGeneration != generation) {
+            World bukkitWorld = getWorld(world);
+            bound = bukkitWorld == null ? null : new Location(bukkitWorld, x, y, z, yaw, pitch);
+            boundGeneration = bukkitWorld == null ? -1 : generation;
+        }
+        return bound;
+    }
+
+    /**
+     * Serializes the location into a string that parse(String) accepts
+     *
+     * @return serialized string
+     */
+    public String serialize() {
+        return world + "," + x + "," + y + "," + z + "," + yaw + "," + pitch;
+    }
+
+    /**
+     * @return serialized string
+     */
+    @Override
+    public String toString() {
+        return serialize();
+    }
+}